@@ -0,0 +1,163 @@
+package com.kapture.nlpdashboardservice.benchmark;
+
+import com.kapture.nlpdashboardservice.cache.TableNameToSchemaCache;
+import com.kapture.nlpdashboardservice.component.PipelineMetrics;
+import com.kapture.nlpdashboardservice.component.SchemaCatalog;
+import com.kapture.nlpdashboardservice.component.SchemaCompactor;
+import com.kapture.nlpdashboardservice.dto.NlpDashboardReqDto;
+import com.kapture.nlpdashboardservice.dto.TableMetadata;
+import com.kapture.nlpdashboardservice.repository.clickhouse.ClickHouseRepository;
+import com.kapture.nlpdashboardservice.utility.NlpDashboardHelper;
+import com.kapture.nlpdashboardservice.utility.NlpPromptBuilder;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import net.sf.json.JSONObject;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Offline stand-ins for ClickHouse and Redis: a synthetic CRM-like schema of a few hundred wide tables
+ * served from memory, and a schema cache that never leaves the heap.
+ */
+final class BenchmarkFixtures {
+
+    static final String[] PROMPTS = {
+            "show tickets by status for last week",
+            "count of ticket history entries per agent",
+            "top 10 customers by number of open complaints",
+            "average first response time of support tickets grouped by priority",
+            "daily call logs with missed calls and call duration for the sales team",
+    };
+
+    private static final String[] ENTITIES = {
+            "ticket", "customer", "agent", "call_log", "complaint", "lead", "order", "invoice", "payment", "campaign",
+            "contact", "account", "task", "meeting", "email", "sms", "survey", "feedback", "product", "inventory",
+    };
+    private static final String[] SUFFIXES = {
+            "", "_history", "_detail", "_audit", "_mapping", "_summary", "_daily", "_archive", "_tag", "_note",
+            "_status", "_assignment", "_sla", "_attachment", "_comment",
+    };
+    private static final String[] COLUMN_WORDS = {
+            "status", "priority", "agent", "customer", "phone", "email", "city", "state", "country", "source",
+            "channel", "category", "sub_category", "amount", "duration", "score", "rating", "remarks", "team", "region",
+    };
+
+    private BenchmarkFixtures() {
+    }
+
+    static List<String> tableNames() {
+        List<String> tableNames = new ArrayList<>();
+        for (String entity : ENTITIES) {
+            for (String suffix : SUFFIXES) {
+                tableNames.add(entity + suffix);
+            }
+        }
+        return tableNames;
+    }
+
+    static JSONObject tableSchema(String tableName, int columnCount) {
+        JSONObject schema = new JSONObject();
+        schema.put("id", "Type:UInt64");
+        schema.put("cm_id", "Type:UInt32");
+        schema.put("create_time", "Type:DateTime, Remarks:time the " + tableName + " row was created");
+        schema.put("update_time", "Type:DateTime");
+        for (int i = 0; schema.size() < columnCount; i++) {
+            String word = COLUMN_WORDS[i % COLUMN_WORDS.length];
+            String column = i < COLUMN_WORDS.length ? word : word + "_" + (i / COLUMN_WORDS.length);
+            schema.put(column, i % 3 == 0 ? "Type:LowCardinality(String), Remarks:" + word.replace('_', ' ') + " of the record" : "Type:String");
+        }
+        return schema;
+    }
+
+    static StubClickHouseRepository clickHouseRepository() {
+        return new StubClickHouseRepository(tableNames(), 60);
+    }
+
+    static NlpDashboardHelper nlpDashboardHelper() {
+        StubClickHouseRepository repository = clickHouseRepository();
+        StubTableNameToSchemaCache cache = new StubTableNameToSchemaCache();
+        // never polled or subscribed here, so no template cache or executors are needed
+        SchemaCatalog schemaCatalog = new SchemaCatalog(repository, cache, null, null);
+        schemaCatalog.reload();
+        return new NlpDashboardHelper(repository, cache, schemaCatalog, pipelineMetrics());
+    }
+
+    static NlpPromptBuilder nlpPromptBuilder() {
+        SchemaCompactor schemaCompactor = new SchemaCompactor(true, 25, 1500, 10_000, 168, new SimpleMeterRegistry());
+        return new NlpPromptBuilder(nlpDashboardHelper(), schemaCompactor, pipelineMetrics());
+    }
+
+    static PipelineMetrics pipelineMetrics() {
+        return new PipelineMetrics(new SimpleMeterRegistry(), Set.of("table", "text", "number", "barchart", "donut", "linechart"));
+    }
+
+    static NlpDashboardReqDto request(String prompt, String dashboardType) {
+        NlpDashboardReqDto reqDto = new NlpDashboardReqDto();
+        reqDto.setPrompt(prompt);
+        reqDto.setDashboardType(dashboardType);
+        reqDto.setStartDate(Timestamp.valueOf("2024-01-01 00:00:00"));
+        reqDto.setEndDate(Timestamp.valueOf("2024-01-31 23:59:59"));
+        return reqDto;
+    }
+
+    static final class StubClickHouseRepository extends ClickHouseRepository {
+
+        private final Map<String, TableMetadata> tables = new LinkedHashMap<>();
+        private final Map<String, JSONObject> schemas = new LinkedHashMap<>();
+
+        StubClickHouseRepository(List<String> tableNames, int columnCount) {
+            super(null);
+            for (String tableName : tableNames) {
+                tables.put(tableName, new TableMetadata(tableName, 1_700_000_000L, null));
+                schemas.put(tableName, tableSchema(tableName, columnCount));
+            }
+        }
+
+        @Override
+        public Map<String, TableMetadata> findTableMetadata() {
+            return new LinkedHashMap<>(tables);
+        }
+
+        @Override
+        public Map<String, JSONObject> findDBTableSchemas(Collection<String> tableNames) {
+            Map<String, JSONObject> result = new LinkedHashMap<>();
+            for (String tableName : tableNames) {
+                JSONObject schema = schemas.get(tableName);
+                if (schema != null) {
+                    result.put(tableName, schema);
+                }
+            }
+            return result;
+        }
+    }
+
+    static final class StubTableNameToSchemaCache extends TableNameToSchemaCache {
+
+        StubTableNameToSchemaCache() {
+            super(null, null, 1, 1);
+        }
+
+        @Override
+        public void subscribeToInvalidation() {
+        }
+
+        @Override
+        public void put(String tableName, String schema) {
+        }
+
+        @Override
+        public Map<String, String> getAll(Collection<String> tableNames) {
+            return Map.of();
+        }
+
+        @Override
+        public void evict(Collection<String> tableNames) {
+        }
+    }
+
+}
@@ -0,0 +1,97 @@
+package com.kapture.nlpdashboardservice.benchmark;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+
+/**
+ * Read-only ResultSet over pre-built rows, implementing only the calls the repository makes.
+ * Dispatch goes through a dynamic proxy; that cost is constant between runs, so results stay
+ * comparable across releases even though they are not absolute driver numbers.
+ */
+final class InMemoryResultSet implements InvocationHandler {
+
+    private final String[] columnNames;
+    private final String[] columnTypes;
+    private final Object[][] rows;
+    private final ResultSetMetaData metaData;
+    private int cursor = -1;
+    private boolean lastWasNull;
+
+    private InMemoryResultSet(String[] columnNames, String[] columnTypes, Object[][] rows) {
+        this.columnNames = columnNames;
+        this.columnTypes = columnTypes;
+        this.rows = rows;
+        this.metaData = (ResultSetMetaData) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{ResultSetMetaData.class}, this::metaData);
+    }
+
+    static ResultSet of(String[] columnNames, String[] columnTypes, Object[][] rows) {
+        InMemoryResultSet handler = new InMemoryResultSet(columnNames, columnTypes, rows);
+        return (ResultSet) Proxy.newProxyInstance(InMemoryResultSet.class.getClassLoader(), new Class<?>[]{ResultSet.class}, handler);
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) {
+        switch (method.getName()) {
+            case "getMetaData":
+                return metaData;
+            case "next":
+                return ++cursor < rows.length;
+            case "beforeFirst":
+                cursor = -1;
+                return null;
+            case "wasNull":
+                return lastWasNull;
+            case "close":
+                return null;
+            case "getObject":
+                return value(args[0]);
+            case "getString": {
+                Object value = value(args[0]);
+                return value == null ? null : value.toString();
+            }
+            case "getInt": {
+                Object value = value(args[0]);
+                return value == null ? 0 : ((Number) value).intValue();
+            }
+            case "getLong": {
+                Object value = value(args[0]);
+                return value == null ? 0L : ((Number) value).longValue();
+            }
+            case "getFloat": {
+                Object value = value(args[0]);
+                return value == null ? 0f : ((Number) value).floatValue();
+            }
+            case "getDouble": {
+                Object value = value(args[0]);
+                return value == null ? 0d : ((Number) value).doubleValue();
+            }
+            default:
+                throw new UnsupportedOperationException(method.getName());
+        }
+    }
+
+    private Object value(Object column) {
+        Object value = rows[cursor][(Integer) column - 1];
+        lastWasNull = value == null;
+        return value;
+    }
+
+    private Object metaData(Object proxy, Method method, Object[] args) {
+        switch (method.getName()) {
+            case "getColumnCount":
+                return columnNames.length;
+            case "getColumnName":
+            case "getColumnLabel":
+                return columnNames[(Integer) args[0] - 1];
+            case "getColumnTypeName":
+                return columnTypes[(Integer) args[0] - 1];
+            default:
+                throw new UnsupportedOperationException(method.getName());
+        }
+    }
+
+}
@@ -0,0 +1,48 @@
+package com.kapture.nlpdashboardservice.benchmark;
+
+import com.kapture.nlpdashboardservice.dto.NlpDashboardReqDto;
+import com.kapture.nlpdashboardservice.exception.KaptureException;
+import com.kapture.nlpdashboardservice.utility.NlpPromptBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SQL prompt assembly (schema lookup, column pruning and instructions) as done before every LLM call.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PromptAssemblyBenchmark {
+
+    @Param({"table", "barchart"})
+    private String dashboardType;
+
+    private NlpPromptBuilder nlpPromptBuilder;
+    private NlpDashboardReqDto reqDto;
+
+    @Setup
+    public void setUp() {
+        nlpPromptBuilder = BenchmarkFixtures.nlpPromptBuilder();
+        reqDto = BenchmarkFixtures.request(BenchmarkFixtures.PROMPTS[3], dashboardType);
+    }
+
+    @Benchmark
+    public String buildSqlPrompt() throws KaptureException {
+        return nlpPromptBuilder.buildSqlPrompt(396, reqDto);
+    }
+
+}
@@ -0,0 +1,73 @@
+package com.kapture.nlpdashboardservice.benchmark;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kapture.nlpdashboardservice.dto.ColumnarResult;
+import com.kapture.nlpdashboardservice.dto.NlpDashboardResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Jackson serialization of the /generate response body, row format against columnar format.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ResponseSerializationBenchmark {
+
+    @Param({"100", "5000"})
+    private int rowCount;
+
+    private ObjectMapper objectMapper;
+    private NlpDashboardResponse rowsResponse;
+    private NlpDashboardResponse columnarResponse;
+
+    @Setup
+    public void setUp() throws SQLException {
+        objectMapper = new ObjectMapper();
+        Object[][] rows = new Object[rowCount][];
+        for (int i = 0; i < rowCount; i++) {
+            rows[i] = new Object[]{"agent_" + (i % 250), i % 2 == 0 ? "open" : "closed", (long) i};
+        }
+        ResultSet resultSet = InMemoryResultSet.of(new String[]{"name", "type", "value"},
+                new String[]{"String", "LowCardinality(String)", "UInt64"}, rows);
+        ColumnarResult result = ColumnarResult.fromResultSet(resultSet);
+
+        rowsResponse = new NlpDashboardResponse();
+        rowsResponse.setDashboardType("barchart");
+        rowsResponse.setDashboardColumns(result.getColumns());
+        rowsResponse.setDashboardValues(result.toRows());
+
+        columnarResponse = new NlpDashboardResponse();
+        columnarResponse.setDashboardType("barchart");
+        columnarResponse.setDashboardColumns(result.getColumns());
+        columnarResponse.setColumnarValues(result);
+    }
+
+    @Benchmark
+    public byte[] rowFormat() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(rowsResponse);
+    }
+
+    @Benchmark
+    public byte[] columnarFormat() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(columnarResponse);
+    }
+
+}
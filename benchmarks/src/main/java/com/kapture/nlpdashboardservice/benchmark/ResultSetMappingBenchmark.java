@@ -0,0 +1,72 @@
+package com.kapture.nlpdashboardservice.benchmark;
+
+import com.kapture.nlpdashboardservice.dto.ColumnarResult;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ResultSet to dashboard values, as done by ClickHouseRepository.findColumnarDataFromSql and
+ * findListOfDataFromSql, against an in-memory ResultSet shaped like a typical chart query.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ResultSetMappingBenchmark {
+
+    private static final String[] COLUMN_NAMES = {"name", "type", "value", "amount", "create_time"};
+    private static final String[] COLUMN_TYPES = {"String", "LowCardinality(String)", "UInt64", "Nullable(Float64)", "DateTime"};
+    private static final String[] TYPES = {"open", "closed", "pending", "escalated"};
+
+    @Param({"100", "5000"})
+    private int rowCount;
+
+    private ResultSet resultSet;
+
+    @Setup
+    public void setUp() {
+        Object[][] rows = new Object[rowCount][];
+        long start = Timestamp.valueOf("2024-01-01 00:00:00").getTime();
+        for (int i = 0; i < rowCount; i++) {
+            rows[i] = new Object[]{
+                    "agent_" + (i % 250),
+                    TYPES[i % TYPES.length],
+                    (long) (i * 7 % 1000),
+                    i % 10 == 0 ? null : i * 1.25d,
+                    new Timestamp(start + i * 60_000L),
+            };
+        }
+        resultSet = InMemoryResultSet.of(COLUMN_NAMES, COLUMN_TYPES, rows);
+    }
+
+    @Benchmark
+    public ColumnarResult columnar() throws SQLException {
+        resultSet.beforeFirst();
+        return ColumnarResult.fromResultSet(resultSet);
+    }
+
+    @Benchmark
+    public List<LinkedHashMap<String, Object>> rows() throws SQLException {
+        resultSet.beforeFirst();
+        return ColumnarResult.fromResultSet(resultSet).toRows();
+    }
+
+}
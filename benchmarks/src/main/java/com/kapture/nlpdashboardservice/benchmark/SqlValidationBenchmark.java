@@ -0,0 +1,57 @@
+package com.kapture.nlpdashboardservice.benchmark;
+
+import com.kapture.nlpdashboardservice.component.SqlValidator;
+import com.kapture.nlpdashboardservice.exception.KaptureException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Validation and tenant/limit injection of an LLM reply before it is sent to ClickHouse.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SqlValidationBenchmark {
+
+    @Param({
+            "SELECT status AS name, count() AS value FROM ticket WHERE cm_id = 396 GROUP BY status",
+            "SELECT agent AS name, avg(duration) AS value, 'avg call duration' AS type\nFROM call_log\nWHERE create_time >= '2024-01-01 00:00:00'\nGROUP BY agent\nORDER BY value DESC;",
+            "select customer, count() as complaints from complaint where customer in (select customer from customer where city = 'Pune') group by customer limit 10",
+    })
+    private String aiReply;
+
+    private SqlValidator uncachedValidator;
+    private SqlValidator memoizedValidator;
+
+    @Setup
+    public void setUp() {
+        uncachedValidator = new SqlValidator(0, new SimpleMeterRegistry());
+        memoizedValidator = new SqlValidator(100, new SimpleMeterRegistry());
+    }
+
+    @Benchmark
+    public String parseAndRewrite() throws KaptureException {
+        return uncachedValidator.validate(396, aiReply, 5000);
+    }
+
+    @Benchmark
+    public String memoizedTemplate() throws KaptureException {
+        return memoizedValidator.validate(396, aiReply, 5000);
+    }
+
+}
@@ -0,0 +1,58 @@
+package com.kapture.nlpdashboardservice.benchmark;
+
+import com.kapture.nlpdashboardservice.exception.KaptureException;
+import com.kapture.nlpdashboardservice.utility.NlpDashboardHelper;
+import com.kapture.nlpdashboardservice.utility.TableNameIndex;
+import net.sf.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Table lookup for a prompt: the bare index match, and the full getRequiredDatabaseSchema call
+ * with the schema served from the in-memory catalog.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TableMatchingBenchmark {
+
+    @Param({"0", "1", "2", "3", "4"})
+    private int promptIndex;
+
+    private String prompt;
+    private TableNameIndex tableNameIndex;
+    private NlpDashboardHelper nlpDashboardHelper;
+
+    @Setup
+    public void setUp() {
+        prompt = BenchmarkFixtures.PROMPTS[promptIndex];
+        tableNameIndex = TableNameIndex.build(BenchmarkFixtures.tableNames());
+        nlpDashboardHelper = BenchmarkFixtures.nlpDashboardHelper();
+    }
+
+    @Benchmark
+    public Set<String> matchTableNames() {
+        return tableNameIndex.match(prompt);
+    }
+
+    @Benchmark
+    public JSONObject requiredDatabaseSchema() throws KaptureException {
+        return nlpDashboardHelper.getRequiredDatabaseSchema(prompt, "table");
+    }
+
+}
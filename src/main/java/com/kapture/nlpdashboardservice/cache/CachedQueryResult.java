@@ -0,0 +1,26 @@
+package com.kapture.nlpdashboardservice.cache;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.kapture.nlpdashboardservice.dto.ColumnarResult;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CachedQueryResult {
+
+    private long createTime;
+    private long expireTime;
+    private ColumnarResult result;
+
+    @JsonIgnore
+    public long getAgeMillis() {
+        return Math.max(0, System.currentTimeMillis() - createTime);
+    }
+
+    public int estimateSizeBytes() {
+        return 64 + result.estimateSizeBytes();
+    }
+}
@@ -0,0 +1,86 @@
+package com.kapture.nlpdashboardservice.cache;
+
+import com.kapture.nlpdashboardservice.component.DashboardPipeline;
+import com.kapture.nlpdashboardservice.component.QueryGuardrails;
+import com.kapture.nlpdashboardservice.component.SqlValidator;
+import com.kapture.nlpdashboardservice.dto.ColumnarResult;
+import com.kapture.nlpdashboardservice.dto.NlpDashboardReqDto;
+import com.kapture.nlpdashboardservice.dto.NlpDashboardResponse;
+import com.kapture.nlpdashboardservice.dto.PagedQuery;
+import com.kapture.nlpdashboardservice.dto.QuerySettings;
+import com.kapture.nlpdashboardservice.exception.KaptureException;
+import com.kapture.nlpdashboardservice.repository.clickhouse.ClickHouseRepository;
+import com.kapture.nlpdashboardservice.utility.BaseResponse;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+
+/**
+ * Serves the pages after the first of a paginated table. Ordered SQL is paginated in ClickHouse and every page is
+ * cached under its own SQL; SQL without a deterministic order has its pages sliced from one cached whole result.
+ */
+@Service
+@RequiredArgsConstructor(onConstructor = @__(@Autowired))
+public class DashboardPager {
+
+    private static final String TABLE_DASHBOARD = "table";
+
+    @Value("${nlp.pagination.max-page-size:500}")
+    private int maxPageSize;
+
+    private final PagedQueryCache pagedQueryCache;
+    private final QueryResultCache queryResultCache;
+    private final SqlValidator sqlValidator;
+    private final QueryGuardrails queryGuardrails;
+    private final ClickHouseRepository clickHouseRepository;
+    private final DashboardPipeline dashboardPipeline;
+
+    public int getPageSize(NlpDashboardReqDto reqDto) {
+        if (reqDto.getPageSize() == null || reqDto.getPageSize() <= 0 || !TABLE_DASHBOARD.equalsIgnoreCase(reqDto.getDashboardType())) {
+            return 0;
+        }
+        return Math.min(reqDto.getPageSize(), maxPageSize);
+    }
+
+    /**
+     * Keeps the query of a first page for its later pages and returns the cursor of the second page.
+     */
+    public String issueCursor(int promptId, PagedQuery pagedQuery) {
+        pagedQueryCache.put(promptId, pagedQuery);
+        return PagedQueryCache.encodeCursor(promptId, pagedQuery.getPageSize());
+    }
+
+    public NlpDashboardResponse fetchPage(int cmId, PagedQueryCache.PageCursor pageCursor, String resultFormat) throws KaptureException {
+        PagedQuery pagedQuery = pagedQueryCache.get(pageCursor.getPromptId());
+        if (pagedQuery == null || pagedQuery.getCmId() != cmId) {
+            throw new KaptureException(BaseResponse.error(HttpStatus.NOT_FOUND, "This result has expired, please run the prompt again!"));
+        }
+        int pageSize = pagedQuery.getPageSize();
+        long offset = pageCursor.getOffset();
+        NlpDashboardResponse resp = new NlpDashboardResponse();
+        resp.setPromptId(pageCursor.getPromptId());
+        resp.setDashboardType(pagedQuery.getDashboardType());
+        resp.setApproximate(pagedQuery.getSampleRatio() != null);
+        resp.setSampleRatio(pagedQuery.getSampleRatio());
+
+        String pageSql = sqlValidator.paginate(pagedQuery.getExecutedSql(), offset, pageSize + 1);
+        // without a deterministic order every page is sliced from the whole result of the executed SQL
+        String sql = pageSql != null ? pageSql : pagedQuery.getExecutedSql();
+        CachedQueryResult cachedPage = queryResultCache.get(sql);
+        resp.setFromCache(cachedPage != null);
+        if (cachedPage == null) {
+            QuerySettings querySettings = queryGuardrails.resolve(cmId, pagedQuery.getDashboardType(), dashboardPipeline.getClickHouseTimeoutMs());
+            cachedPage = queryResultCache.put(sql, clickHouseRepository.findColumnarDataFromSql(sql, querySettings));
+        }
+        resp.setDataAgeMillis(cachedPage.getAgeMillis());
+        ColumnarResult page = pageSql != null ? cachedPage.getResult() : cachedPage.getResult().slice((int) offset, (int) offset + pageSize + 1);
+        if (page.getRowCount() > pageSize) {
+            resp.setNextCursor(PagedQueryCache.encodeCursor(pageCursor.getPromptId(), offset + pageSize));
+        }
+        resp.putResult(page.slice(0, pageSize), resultFormat);
+        return resp;
+    }
+
+}
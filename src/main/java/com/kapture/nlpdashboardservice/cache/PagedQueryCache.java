@@ -0,0 +1,91 @@
+package com.kapture.nlpdashboardservice.cache;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kapture.nlpdashboardservice.dto.PagedQuery;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RBucket;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the validated SQL of paginated dashboards in redis for a short time so later pages can be served
+ * by any instance. Cursors are opaque to the client and carry the promptId and the row offset.
+ */
+@Service
+@Slf4j
+public class PagedQueryCache {
+
+    private static final String KEY_PREFIX = "NLPD_PAGED_QUERY:";
+
+    private final RedissonClient redissonClient;
+    private final ObjectMapper objectMapper;
+    private final long ttlMinutes;
+
+    @Autowired
+    public PagedQueryCache(RedissonClient redissonClient,
+                           ObjectMapper objectMapper,
+                           @Value("${nlp.pagination.ttl-minutes:30}") long ttlMinutes) {
+        this.redissonClient = redissonClient;
+        this.objectMapper = objectMapper;
+        this.ttlMinutes = ttlMinutes;
+    }
+
+    public void put(int promptId, PagedQuery pagedQuery) {
+        try {
+            getBucket(promptId).set(objectMapper.writeValueAsString(pagedQuery), ttlMinutes, TimeUnit.MINUTES);
+        } catch (Exception e) {
+            log.error("Error in putPagedQuery" + e);
+        }
+    }
+
+    public PagedQuery get(int promptId) {
+        try {
+            String json = getBucket(promptId).get();
+            return json == null ? null : objectMapper.readValue(json, PagedQuery.class);
+        } catch (Exception e) {
+            log.error("Error in getPagedQuery" + e);
+            return null;
+        }
+    }
+
+    public static String encodeCursor(int promptId, long offset) {
+        String cursor = promptId + ":" + offset;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(cursor.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Returns null for a cursor that was not issued by {@link #encodeCursor}.
+     */
+    public static PageCursor decodeCursor(String cursor) {
+        try {
+            String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = decoded.indexOf(':');
+            int promptId = Integer.parseInt(decoded.substring(0, separator));
+            long offset = Long.parseLong(decoded.substring(separator + 1));
+            return promptId > 0 && offset >= 0 ? new PageCursor(promptId, offset) : null;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private RBucket<String> getBucket(int promptId) {
+        return redissonClient.getBucket(KEY_PREFIX + promptId, StringCodec.INSTANCE);
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static final class PageCursor {
+        private final int promptId;
+        private final long offset;
+    }
+
+}
@@ -0,0 +1,246 @@
+package com.kapture.nlpdashboardservice.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.kapture.nlpdashboardservice.dto.NlpDashboardReqDto;
+import com.kapture.nlpdashboardservice.utility.ConversionUtil;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RMapCache;
+import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+@Service
+@Slf4j
+public class PromptToSqlTemplateCache {
+
+    public static final String PROMPT_TO_SQL_TEMPLATE_MAP = "PROMPT_TO_SQL_TEMPLATE_MAP";
+
+    private static final String CM_ID_PLACEHOLDER = "{{CM_ID}}";
+    private static final String START_DATE_PLACEHOLDER = "{{START_DATE}}";
+    private static final String END_DATE_PLACEHOLDER = "{{END_DATE}}";
+    private static final String START_DAY_PLACEHOLDER = "{{START_DAY}}";
+    private static final String END_DAY_PLACEHOLDER = "{{END_DAY}}";
+
+    private static final Pattern CM_ID_PREDICATE = Pattern.compile("(?i)(cm_id\\s*=\\s*)'?(\\d+)'?");
+    private static final Pattern NON_WORD = Pattern.compile("[^a-z0-9]+");
+    // any date or time the request range was not bound to: other literal formats, epoch values and relative time
+    private static final Pattern UNBOUND_DATE = Pattern.compile("(?i)\\b\\d{4}[-/.]\\d{1,2}[-/.]\\d{1,2}\\b"
+            + "|\\b\\d{1,2}[-/.]\\d{1,2}[-/.]\\d{2,4}\\b"
+            + "|\\b\\d{1,2}:\\d{2}(:\\d{2})?\\b"
+            + "|\\b\\d{8}\\b|\\b\\d{10}(\\d{3})?\\b"
+            + "|\\b(now|now64|today|yesterday)\\s*\\("
+            + "|\\binterval\\b"
+            + "|\\b(add|subtract)(seconds|minutes|hours|days|weeks|months|quarters|years)\\s*\\(");
+
+    private final RedissonClient redissonClient;
+    private final Cache<String, String> localCache;
+    private final long ttlMinutes;
+    private final int redisMaxSize;
+
+    private final Counter localHitCounter;
+    private final Counter redisHitCounter;
+    private final Counter missCounter;
+
+    @Autowired
+    public PromptToSqlTemplateCache(RedissonClient redissonClient,
+                                    MeterRegistry meterRegistry,
+                                    @Value("${nlp.sql-template-cache.ttl-minutes:720}") long ttlMinutes,
+                                    @Value("${nlp.sql-template-cache.local-max-size:2000}") long localMaxSize,
+                                    @Value("${nlp.sql-template-cache.redis-max-size:20000}") int redisMaxSize) {
+        this.redissonClient = redissonClient;
+        this.ttlMinutes = ttlMinutes;
+        this.redisMaxSize = redisMaxSize;
+        this.localCache = Caffeine.newBuilder()
+                .maximumSize(localMaxSize)
+                .expireAfterWrite(ttlMinutes, TimeUnit.MINUTES)
+                .build();
+        this.localHitCounter = meterRegistry.counter("nlp.sql.template.cache", "result", "hit", "tier", "local");
+        this.redisHitCounter = meterRegistry.counter("nlp.sql.template.cache", "result", "hit", "tier", "redis");
+        this.missCounter = meterRegistry.counter("nlp.sql.template.cache", "result", "miss", "tier", "none");
+    }
+
+    @PostConstruct
+    public void init() {
+        try {
+            getRedisMap().setMaxSize(redisMaxSize);
+            // templates are built against the schema, drop the local ones reading a table whose schema changed
+            redissonClient.getTopic(TableNameToSchemaCache.TABLE_SCHEMA_INVALIDATION_TOPIC)
+                    .addListener(String.class, (channel, tableName) -> invalidateLocal(tableName));
+        } catch (Exception e) {
+            log.error("Error in initSqlTemplateCache" + e);
+        }
+    }
+
+    public String get(String key) {
+        String template = localCache.getIfPresent(key);
+        if (template != null) {
+            localHitCounter.increment();
+            return template;
+        }
+        try {
+            template = getRedisMap().get(key);
+        } catch (Exception e) {
+            log.error("Error in getSqlTemplate" + e);
+        }
+        if (template != null) {
+            localCache.put(key, template);
+            redisHitCounter.increment();
+        } else {
+            missCounter.increment();
+        }
+        return template;
+    }
+
+    public void put(String key, int cmId, NlpDashboardReqDto reqDto, String aiReply) {
+        String template = toTemplate(aiReply, cmId, reqDto);
+        if (template == null) {
+            return;
+        }
+        localCache.put(key, template);
+        try {
+            getRedisMap().put(key, template, ttlMinutes, TimeUnit.MINUTES);
+        } catch (Exception e) {
+            log.error("Error in putSqlTemplate" + e);
+        }
+    }
+
+    /**
+     * Drops the local templates that read the table, or all of them for an empty name (full schema clear).
+     */
+    public void invalidateLocal(String tableName) {
+        if (tableName == null || tableName.isEmpty()) {
+            localCache.invalidateAll();
+            return;
+        }
+        Pattern reference = tableReference(List.of(tableName));
+        localCache.asMap().values().removeIf(template -> reference.matcher(template).find());
+    }
+
+    /**
+     * Drops the templates that read any of the tables from both tiers. Other nodes drop their local copies
+     * when the tables are published on the schema invalidation topic.
+     */
+    public void evictTables(Collection<String> tableNames) {
+        if (tableNames.isEmpty()) {
+            return;
+        }
+        Pattern reference = tableReference(tableNames);
+        localCache.asMap().values().removeIf(template -> reference.matcher(template).find());
+        try {
+            RMapCache<String, String> map = getRedisMap();
+            List<String> staleKeys = new ArrayList<>();
+            for (Map.Entry<String, String> entry : map.entrySet()) {
+                if (reference.matcher(entry.getValue()).find()) {
+                    staleKeys.add(entry.getKey());
+                }
+            }
+            if (!staleKeys.isEmpty()) {
+                map.fastRemove(staleKeys.toArray(new String[0]));
+            }
+        } catch (Exception e) {
+            log.error("Error in evictSqlTemplates", e);
+        }
+    }
+
+    public boolean clear() {
+        localCache.invalidateAll();
+        try {
+            getRedisMap().clear();
+            return true;
+        } catch (Exception e) {
+            log.error("Error in clearSqlTemplateCache" + e);
+            return false;
+        }
+    }
+
+    public static String buildKey(NlpDashboardReqDto reqDto) {
+        String prompt = NON_WORD.matcher(reqDto.getPrompt().toLowerCase(Locale.ROOT)).replaceAll(" ").trim();
+        return prompt + "|" + reqDto.getDashboardType().toLowerCase(Locale.ROOT) + "|" + (hasDateRange(reqDto) ? "range" : "all");
+    }
+
+    public static String bind(String template, int cmId, NlpDashboardReqDto reqDto) {
+        String sql = template.replace(CM_ID_PLACEHOLDER, String.valueOf(cmId));
+        if (hasDateRange(reqDto)) {
+            String startDate = ConversionUtil.getTimestampForSql(reqDto.getStartDate());
+            String endDate = ConversionUtil.getTimestampForSql(reqDto.getEndDate());
+            sql = sql.replace(START_DATE_PLACEHOLDER, startDate)
+                    .replace(END_DATE_PLACEHOLDER, endDate)
+                    .replace(START_DAY_PLACEHOLDER, startDate.substring(0, 10))
+                    .replace(END_DAY_PLACEHOLDER, endDate.substring(0, 10));
+        }
+        return sql;
+    }
+
+    /**
+     * Returns null when the reply can not be parameterized safely, i.e. when the tenant id or
+     * the date range is still present in a form we can not bind back. With a date range both ends
+     * must have become placeholders and no other date, epoch value or relative time may remain.
+     */
+    static String toTemplate(String aiReply, int cmId, NlpDashboardReqDto reqDto) {
+        String template = aiReply;
+        Matcher matcher = CM_ID_PREDICATE.matcher(template);
+        StringBuffer sb = new StringBuffer();
+        while (matcher.find()) {
+            if (!matcher.group(2).equals(String.valueOf(cmId))) {
+                return null;
+            }
+            matcher.appendReplacement(sb, Matcher.quoteReplacement(matcher.group(1) + CM_ID_PLACEHOLDER));
+        }
+        matcher.appendTail(sb);
+        template = sb.toString();
+        if (Pattern.compile("\\b" + cmId + "\\b").matcher(template).find()) {
+            return null;
+        }
+        if (hasDateRange(reqDto)) {
+            String startDate = ConversionUtil.getTimestampForSql(reqDto.getStartDate());
+            String endDate = ConversionUtil.getTimestampForSql(reqDto.getEndDate());
+            String startDay = startDate.substring(0, 10);
+            String endDay = endDate.substring(0, 10);
+            if (startDay.equals(endDay)) {
+                return null;
+            }
+            template = template.replace(startDate, START_DATE_PLACEHOLDER)
+                    .replace(endDate, END_DATE_PLACEHOLDER)
+                    .replace(startDay, START_DAY_PLACEHOLDER)
+                    .replace(endDay, END_DAY_PLACEHOLDER);
+            boolean startBound = template.contains(START_DATE_PLACEHOLDER) || template.contains(START_DAY_PLACEHOLDER);
+            boolean endBound = template.contains(END_DATE_PLACEHOLDER) || template.contains(END_DAY_PLACEHOLDER);
+            if (!startBound || !endBound || UNBOUND_DATE.matcher(template).find()) {
+                return null;
+            }
+        }
+        return template;
+    }
+
+    // a table name as a whole identifier, bare, quoted or database qualified
+    static Pattern tableReference(Collection<String> tableNames) {
+        StringBuilder names = new StringBuilder();
+        for (String tableName : tableNames) {
+            names.append(names.length() == 0 ? "" : "|").append(Pattern.quote(tableName));
+        }
+        return Pattern.compile("(?i)(?<![\\w])(" + names + ")(?![\\w])");
+    }
+
+    private static boolean hasDateRange(NlpDashboardReqDto reqDto) {
+        return reqDto.getStartDate() != null && reqDto.getEndDate() != null;
+    }
+
+    private RMapCache<String, String> getRedisMap() {
+        return redissonClient.getMapCache(PROMPT_TO_SQL_TEMPLATE_MAP);
+    }
+
+}
@@ -0,0 +1,151 @@
+package com.kapture.nlpdashboardservice.cache;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.kapture.nlpdashboardservice.dto.ColumnarResult;
+import com.kapture.nlpdashboardservice.utility.ConversionUtil;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RBucket;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.ByteArrayCodec;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+@Service
+@Slf4j
+public class QueryResultCache {
+
+    // gzipped json; the prefix changed when entries stopped being java serialized
+    public static final String QUERY_RESULT_KEY_PREFIX = "NLPD_QUERY_RESULT_JSON:";
+
+    private final RedissonClient redissonClient;
+    private final ObjectMapper objectMapper;
+    private final Cache<String, CachedQueryResult> localCache;
+    private final boolean redisEnabled;
+    private final long defaultTtlSeconds;
+
+    private final Counter localHitCounter;
+    private final Counter redisHitCounter;
+    private final Counter missCounter;
+
+    @Autowired
+    public QueryResultCache(RedissonClient redissonClient,
+                            MeterRegistry meterRegistry,
+                            ObjectMapper objectMapper,
+                            @Value("${nlp.query-result-cache.ttl-seconds:300}") long defaultTtlSeconds,
+                            @Value("${nlp.query-result-cache.max-memory-mb:256}") long maxMemoryMb,
+                            @Value("${nlp.query-result-cache.redis-enabled:false}") boolean redisEnabled) {
+        this.redissonClient = redissonClient;
+        this.objectMapper = objectMapper;
+        this.redisEnabled = redisEnabled;
+        this.defaultTtlSeconds = defaultTtlSeconds;
+        // caffeine evicts by W-TinyLFU (recency + frequency) once the byte budget is reached
+        this.localCache = Caffeine.newBuilder()
+                .maximumWeight(maxMemoryMb * 1024 * 1024)
+                .weigher((String key, CachedQueryResult value) -> value.estimateSizeBytes())
+                .expireAfter(new Expiry<String, CachedQueryResult>() {
+                    @Override
+                    public long expireAfterCreate(String key, CachedQueryResult value, long currentTime) {
+                        return remainingNanos(value);
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String key, CachedQueryResult value, long currentTime, long currentDuration) {
+                        return remainingNanos(value);
+                    }
+
+                    @Override
+                    public long expireAfterRead(String key, CachedQueryResult value, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .build();
+        this.localHitCounter = meterRegistry.counter("nlp.query.result.cache", "result", "hit", "tier", "local");
+        this.redisHitCounter = meterRegistry.counter("nlp.query.result.cache", "result", "hit", "tier", "redis");
+        this.missCounter = meterRegistry.counter("nlp.query.result.cache", "result", "miss", "tier", "none");
+    }
+
+    public CachedQueryResult get(String sql) {
+        String key = buildKey(sql);
+        CachedQueryResult result = localCache.getIfPresent(key);
+        if (result != null) {
+            localHitCounter.increment();
+            return result;
+        }
+        if (redisEnabled) {
+            try {
+                RBucket<byte[]> bucket = redissonClient.getBucket(key, ByteArrayCodec.INSTANCE);
+                byte[] bytes = bucket.get();
+                if (bytes != null) {
+                    result = decompress(bytes);
+                    localCache.put(key, result);
+                    redisHitCounter.increment();
+                    return result;
+                }
+            } catch (Exception e) {
+                log.error("Error in getQueryResult" + e);
+            }
+        }
+        missCounter.increment();
+        return null;
+    }
+
+    public CachedQueryResult put(String sql, ColumnarResult result) {
+        return put(sql, result, defaultTtlSeconds);
+    }
+
+    public CachedQueryResult put(String sql, ColumnarResult result, long ttlSeconds) {
+        long now = System.currentTimeMillis();
+        CachedQueryResult cachedResult = new CachedQueryResult(now, now + TimeUnit.SECONDS.toMillis(ttlSeconds), result);
+        if (ttlSeconds <= 0) {
+            return cachedResult;
+        }
+        String key = buildKey(sql);
+        localCache.put(key, cachedResult);
+        if (redisEnabled) {
+            try {
+                RBucket<byte[]> bucket = redissonClient.getBucket(key, ByteArrayCodec.INSTANCE);
+                bucket.set(compress(cachedResult), ttlSeconds, TimeUnit.SECONDS);
+            } catch (Exception e) {
+                log.error("Error in putQueryResult" + e);
+            }
+        }
+        return cachedResult;
+    }
+
+    private static String buildKey(String sql) {
+        return QUERY_RESULT_KEY_PREFIX + ConversionUtil.sha256Hex(sql);
+    }
+
+    private static long remainingNanos(CachedQueryResult value) {
+        return TimeUnit.MILLISECONDS.toNanos(Math.max(0, value.getExpireTime() - System.currentTimeMillis()));
+    }
+
+    byte[] compress(CachedQueryResult result) throws Exception {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (OutputStream gzip = new GZIPOutputStream(bos)) {
+            objectMapper.writeValue(gzip, result);
+        }
+        return bos.toByteArray();
+    }
+
+    CachedQueryResult decompress(byte[] bytes) throws Exception {
+        try (InputStream gzip = new GZIPInputStream(new ByteArrayInputStream(bytes))) {
+            return objectMapper.readValue(gzip, CachedQueryResult.class);
+        }
+    }
+
+}
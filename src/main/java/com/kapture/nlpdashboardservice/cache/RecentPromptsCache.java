@@ -0,0 +1,204 @@
+package com.kapture.nlpdashboardservice.cache;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kapture.nlpdashboardservice.model.NLPDPrompt;
+import com.kapture.nlpdashboardservice.repository.mysql.NLPDPromptRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RList;
+import org.redisson.api.RScript;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Newest-first ring buffer of the last few prompts per (cmId, empId), kept in a redis list of JSON
+ * entries. The write path and feedback keep it current; MySQL is only read when the list is missing.
+ * <p>
+ * Every change goes through a lua script so it is atomic, and bumps a version key next to the list. A list
+ * loaded from MySQL is only stored if the version did not move while it was read, otherwise it could miss
+ * a prompt or feedback saved in the meantime.
+ */
+@Service
+@Slf4j
+public class RecentPromptsCache {
+
+    // the hash tag keeps the list and its version in one cluster slot for the scripts
+    private static final String KEY_PREFIX = "NLPD_RECENT_PROMPTS:{";
+    private static final String LIST_SUFFIX = "}";
+    private static final String VERSION_SUFFIX = "}:version";
+
+    // KEYS: list, version; ARGV: entry, size, ttl seconds
+    private static final String PUSH_SCRIPT =
+            "redis.call('incr', KEYS[2]); redis.call('expire', KEYS[2], ARGV[3]); "
+                    + "if redis.call('exists', KEYS[1]) == 0 then return 0 end; "
+                    + "redis.call('lpush', KEYS[1], ARGV[1]); "
+                    + "redis.call('ltrim', KEYS[1], 0, tonumber(ARGV[2]) - 1); "
+                    + "redis.call('expire', KEYS[1], ARGV[3]); "
+                    + "return 1";
+    // KEYS: list, version; ARGV: index, expected entry, new entry, ttl seconds
+    private static final String REPLACE_SCRIPT =
+            "redis.call('incr', KEYS[2]); redis.call('expire', KEYS[2], ARGV[4]); "
+                    + "if redis.call('lindex', KEYS[1], ARGV[1]) ~= ARGV[2] then return 0 end; "
+                    + "redis.call('lset', KEYS[1], ARGV[1], ARGV[3]); "
+                    + "return 1";
+    // KEYS: version; ARGV: ttl seconds
+    private static final String BUMP_SCRIPT =
+            "redis.call('incr', KEYS[1]); redis.call('expire', KEYS[1], ARGV[1]); return 1";
+    // KEYS: list, version; ARGV: version read before loading, ttl seconds, entries...
+    private static final String FILL_SCRIPT =
+            "if (redis.call('get', KEYS[2]) or '0') ~= ARGV[1] then return 0 end; "
+                    + "redis.call('del', KEYS[1]); "
+                    + "redis.call('rpush', KEYS[1], unpack(ARGV, 3)); "
+                    + "redis.call('expire', KEYS[1], ARGV[2]); "
+                    + "return 1";
+    private static final int FEEDBACK_ATTEMPTS = 3;
+
+    private final RedissonClient redissonClient;
+    private final NLPDPromptRepository nlpdPromptRepository;
+    private final ObjectMapper objectMapper;
+    private final int size;
+    private final long ttlHours;
+
+    @Autowired
+    public RecentPromptsCache(RedissonClient redissonClient,
+                              NLPDPromptRepository nlpdPromptRepository,
+                              ObjectMapper objectMapper,
+                              @Value("${nlp.recent-prompts.size:5}") int size,
+                              @Value("${nlp.recent-prompts.ttl-hours:24}") long ttlHours) {
+        this.redissonClient = redissonClient;
+        this.nlpdPromptRepository = nlpdPromptRepository;
+        this.objectMapper = objectMapper;
+        this.size = size;
+        this.ttlHours = ttlHours;
+    }
+
+    public List<NLPDPrompt> getRecentPrompts(int cmId, int empId) {
+        try {
+            List<String> entries = getList(cmId, empId).readAll();
+            if (!entries.isEmpty()) {
+                List<NLPDPrompt> prompts = new ArrayList<>(entries.size());
+                for (String entry : entries) {
+                    prompts.add(objectMapper.readValue(entry, NLPDPrompt.class));
+                }
+                return prompts;
+            }
+        } catch (Exception e) {
+            log.error("Error in getRecentPrompts cache", e);
+        }
+        String version = getVersion(cmId, empId);
+        List<NLPDPrompt> prompts = nlpdPromptRepository.getRecentPrompts(cmId, empId, size);
+        if (version != null) {
+            fill(cmId, empId, version, prompts);
+        }
+        return prompts;
+    }
+
+    /**
+     * Called once a prompt has its id. A missing list is left missing, the next read loads the full feed from MySQL.
+     */
+    public void onPromptSaved(NLPDPrompt nlpdPrompt) {
+        if (nlpdPrompt.getId() == 0) {
+            return;
+        }
+        try {
+            eval(PUSH_SCRIPT, keys(nlpdPrompt.getCmId(), nlpdPrompt.getEmpId()),
+                    objectMapper.writeValueAsString(nlpdPrompt), String.valueOf(size), ttlSeconds());
+        } catch (Exception e) {
+            log.error("Error in onPromptSaved", e);
+        }
+    }
+
+    public void onFeedback(int cmId, int empId, int promptId, Boolean isSatisfied, String feedback) {
+        try {
+            // compare-and-set on the entry, retried when another write moved it meanwhile
+            for (int attempt = 0; attempt < FEEDBACK_ATTEMPTS; attempt++) {
+                List<String> entries = getList(cmId, empId).readAll();
+                int index = -1;
+                NLPDPrompt prompt = null;
+                for (int i = 0; i < entries.size() && prompt == null; i++) {
+                    NLPDPrompt entry = objectMapper.readValue(entries.get(i), NLPDPrompt.class);
+                    if (entry.getId() == promptId) {
+                        index = i;
+                        prompt = entry;
+                    }
+                }
+                if (prompt == null) {
+                    eval(BUMP_SCRIPT, List.of(getVersionKey(cmId, empId)), ttlSeconds());
+                    return;
+                }
+                prompt.setIsSatisfied(isSatisfied);
+                prompt.setFeedback(feedback);
+                if (eval(REPLACE_SCRIPT, keys(cmId, empId), String.valueOf(index), entries.get(index),
+                        objectMapper.writeValueAsString(prompt), ttlSeconds())) {
+                    return;
+                }
+            }
+            // keep losing the race, drop the list and let the next read load it from MySQL
+            getList(cmId, empId).delete();
+        } catch (Exception e) {
+            log.error("Error in onFeedback cache", e);
+        }
+    }
+
+    private void fill(int cmId, int empId, String version, List<NLPDPrompt> prompts) {
+        if (prompts.isEmpty()) {
+            return;
+        }
+        try {
+            List<Object> args = new ArrayList<>(prompts.size() + 2);
+            args.add(version);
+            args.add(ttlSeconds());
+            for (NLPDPrompt prompt : prompts) {
+                args.add(objectMapper.writeValueAsString(prompt));
+            }
+            eval(FILL_SCRIPT, keys(cmId, empId), args.toArray());
+        } catch (Exception e) {
+            log.error("Error in fillRecentPrompts", e);
+        }
+    }
+
+    // null when redis can not be read, the list is then not filled
+    private String getVersion(int cmId, int empId) {
+        try {
+            String version = redissonClient.<String>getBucket(getVersionKey(cmId, empId), StringCodec.INSTANCE).get();
+            return version == null ? "0" : version;
+        } catch (Exception e) {
+            log.error("Error in getRecentPrompts version", e);
+            return null;
+        }
+    }
+
+    private boolean eval(String script, List<Object> keys, Object... values) {
+        Long result = redissonClient.getScript(StringCodec.INSTANCE)
+                .eval(RScript.Mode.READ_WRITE, script, RScript.ReturnType.INTEGER, keys, values);
+        return result != null && result == 1;
+    }
+
+    private String ttlSeconds() {
+        return String.valueOf(TimeUnit.HOURS.toSeconds(ttlHours));
+    }
+
+    private List<Object> keys(int cmId, int empId) {
+        return Arrays.asList(getListKey(cmId, empId), getVersionKey(cmId, empId));
+    }
+
+    private static String getListKey(int cmId, int empId) {
+        return KEY_PREFIX + cmId + ":" + empId + LIST_SUFFIX;
+    }
+
+    private static String getVersionKey(int cmId, int empId) {
+        return KEY_PREFIX + cmId + ":" + empId + VERSION_SUFFIX;
+    }
+
+    private RList<String> getList(int cmId, int empId) {
+        return redissonClient.getList(getListKey(cmId, empId), StringCodec.INSTANCE);
+    }
+
+}
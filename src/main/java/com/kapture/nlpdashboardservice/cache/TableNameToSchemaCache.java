@@ -1,44 +1,155 @@
 package com.kapture.nlpdashboardservice.cache;
 
-import lombok.RequiredArgsConstructor;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.kapture.nlpdashboardservice.component.DashboardExecutors;
 import lombok.extern.slf4j.Slf4j;
 import org.redisson.api.RMap;
+import org.redisson.api.RTopic;
 import org.redisson.api.RedissonClient;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
 @Service
-@RequiredArgsConstructor(onConstructor = @__(@Autowired))
 @Slf4j
 public class TableNameToSchemaCache {
 
+    public static final String TABLE_NAME_TO_SCHEMA_MAP = "TABLE_NAME_TO_SCHEMA_MAP";
+    public static final String TABLE_SCHEMA_INVALIDATION_TOPIC = "TABLE_SCHEMA_INVALIDATION_TOPIC";
+
     private final RedissonClient redissonClient;
+    private final DashboardExecutors dashboardExecutors;
+    private final Cache<String, String> nearCache;
 
-    public static final String TABLE_NAME_TO_SCHEMA_MAP = "TABLE_NAME_TO_SCHEMA_MAP";
+    @Autowired
+    public TableNameToSchemaCache(RedissonClient redissonClient,
+                                  DashboardExecutors dashboardExecutors,
+                                  @Value("${nlp.schema-near-cache.max-size:2000}") long maxSize,
+                                  @Value("${nlp.schema-near-cache.ttl-minutes:60}") long ttlMinutes) {
+        this.redissonClient = redissonClient;
+        this.dashboardExecutors = dashboardExecutors;
+        this.nearCache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttlMinutes, TimeUnit.MINUTES)
+                .build();
+    }
 
-    public void put(String tableName, String schema) {
+    @PostConstruct
+    public void subscribeToInvalidation() {
         try {
-            RMap<String, String> map = redissonClient.getMap(TABLE_NAME_TO_SCHEMA_MAP);
-            map.put(tableName, schema);
+            RTopic topic = redissonClient.getTopic(TABLE_SCHEMA_INVALIDATION_TOPIC);
+            topic.addListener(String.class, (channel, tableName) -> invalidateLocal(tableName));
         } catch (Exception e) {
-            log.error("Error in putTableSchema" + e);
+            log.error("Error in subscribeToInvalidation" + e);
+        }
+    }
+
+    /**
+     * Calls the listener for every invalidation published by any node, this one included; an empty
+     * table name means the whole schema was cleared.
+     */
+    public void addInvalidationListener(Consumer<String> listener) {
+        redissonClient.getTopic(TABLE_SCHEMA_INVALIDATION_TOPIC).addListener(String.class, (channel, tableName) -> listener.accept(tableName));
+    }
+
+    public void put(String tableName, String schema) {
+        nearCache.put(tableName, schema);
+        try {
+            dashboardExecutors.getCacheWriteExecutor().execute(() -> {
+                try {
+                    RMap<String, String> map = redissonClient.getMap(TABLE_NAME_TO_SCHEMA_MAP);
+                    map.fastPut(tableName, schema);
+                } catch (Exception e) {
+                    log.error("Error in putTableSchema" + e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            log.warn("Cache write queue is full, skipped redis write for {}", tableName);
         }
     }
 
     public String get(String tableName) {
+        String schema = nearCache.getIfPresent(tableName);
+        if (schema != null) {
+            return schema;
+        }
         try {
             RMap<String, String> map = redissonClient.getMap(TABLE_NAME_TO_SCHEMA_MAP);
-            return map.get(tableName);
+            schema = map.get(tableName);
+            if (schema != null) {
+                nearCache.put(tableName, schema);
+            }
+            return schema;
         } catch (Exception e) {
             log.error("Error in getTableSchema" + e);
             return null;
         }
     }
 
+    /**
+     * Looks up all tables at once: heap first, then a single redis round trip for whatever is missing.
+     */
+    public Map<String, String> getAll(Collection<String> tableNames) {
+        Map<String, String> schemas = new HashMap<>(nearCache.getAllPresent(tableNames));
+        if (schemas.size() == tableNames.size()) {
+            return schemas;
+        }
+        Set<String> missing = new HashSet<>(tableNames);
+        missing.removeAll(schemas.keySet());
+        try {
+            RMap<String, String> map = redissonClient.getMap(TABLE_NAME_TO_SCHEMA_MAP);
+            Map<String, String> remote = map.getAll(missing);
+            nearCache.putAll(remote);
+            schemas.putAll(remote);
+        } catch (Exception e) {
+            log.error("Error in getAllTableSchema" + e);
+        }
+        return schemas;
+    }
+
+    public void invalidateLocal(String tableName) {
+        if (tableName == null || tableName.isEmpty()) {
+            nearCache.invalidateAll();
+        } else {
+            nearCache.invalidate(tableName);
+        }
+    }
+
+    public void evict(Collection<String> tableNames) {
+        if (tableNames.isEmpty()) {
+            return;
+        }
+        nearCache.invalidateAll(tableNames);
+        try {
+            RMap<String, String> map = redissonClient.getMap(TABLE_NAME_TO_SCHEMA_MAP);
+            map.fastRemove(tableNames.toArray(new String[0]));
+            RTopic topic = redissonClient.getTopic(TABLE_SCHEMA_INVALIDATION_TOPIC);
+            for (String tableName : tableNames) {
+                topic.publish(tableName);
+            }
+        } catch (Exception e) {
+            log.error("Error in evictTableSchema" + e);
+        }
+    }
+
     public boolean clear() {
+        nearCache.invalidateAll();
         try {
             RMap<String, String> map = redissonClient.getMap(TABLE_NAME_TO_SCHEMA_MAP);
             map.clear();
+            // empty message means every table, other nodes drop their near cache
+            redissonClient.getTopic(TABLE_SCHEMA_INVALIDATION_TOPIC).publish("");
             return true;
         } catch (Exception e) {
             log.error("Error in clearTableSchemaCache" + e);
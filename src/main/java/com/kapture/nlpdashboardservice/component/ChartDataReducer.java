@@ -0,0 +1,372 @@
+package com.kapture.nlpdashboardservice.component;
+
+import com.kapture.nlpdashboardservice.dto.ColumnarResult;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Shrinks chart results to what the chart can show, using the name/type/value aliases of
+ * {@code NlpDashboardHelper.getAliasForChart}: rows with the same name and type are summed, donut and bar
+ * charts keep their largest categories and fold the rest into "Other", and line series are downsampled
+ * with Largest-Triangle-Three-Buckets, which keeps peaks and dips. Table, number and text results pass through.
+ */
+@Component
+public class ChartDataReducer {
+
+    private static final String NAME = "name";
+    private static final String TYPE = "type";
+    private static final String VALUE = "value";
+    private static final String OTHER = "Other";
+
+    private final boolean enabled;
+    private final int maxPointsPerSeries;
+    private final int donutMaxCategories;
+    private final int barMaxCategories;
+    private final DistributionSummary rowsBefore;
+    private final DistributionSummary rowsAfter;
+
+    @Autowired
+    public ChartDataReducer(@Value("${nlp.chart.reduce.enabled:true}") boolean enabled,
+                            @Value("${nlp.chart.reduce.max-points-per-series:500}") int maxPointsPerSeries,
+                            @Value("${nlp.chart.reduce.donut-max-categories:10}") int donutMaxCategories,
+                            @Value("${nlp.chart.reduce.bar-max-categories:25}") int barMaxCategories,
+                            MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.maxPointsPerSeries = Math.max(3, maxPointsPerSeries);
+        this.donutMaxCategories = Math.max(2, donutMaxCategories);
+        this.barMaxCategories = Math.max(2, barMaxCategories);
+        this.rowsBefore = DistributionSummary.builder("nlp.chart.rows").tag("stage", "before").register(meterRegistry);
+        this.rowsAfter = DistributionSummary.builder("nlp.chart.rows").tag("stage", "after").register(meterRegistry);
+    }
+
+    public ColumnarResult reduce(String dashboardType, ColumnarResult result) {
+        if (!enabled || dashboardType == null || result.getRowCount() < 2) {
+            return result;
+        }
+        String chartType = dashboardType.toLowerCase(Locale.ROOT);
+        boolean donut = chartType.equals("donut");
+        boolean bar = chartType.contains("bar");
+        boolean line = chartType.contains("line") || chartType.contains("area");
+        if (!donut && !bar && !line) {
+            return result;
+        }
+        int nameIdx = indexOf(result, NAME);
+        int typeIdx = indexOf(result, TYPE);
+        int valueIdx = indexOf(result, VALUE);
+        if (valueIdx < 0 || !result.getData().get(valueIdx).isNumeric()) {
+            return result;
+        }
+        rowsBefore.record(result.getRowCount());
+        ColumnarResult reduced = result;
+        // extra columns would be dropped or mixed up by summing, only the alias contract is aggregated
+        if (hasOnlyAliasColumns(result)) {
+            reduced = sumDuplicates(reduced, nameIdx, typeIdx, valueIdx);
+            if (donut || bar) {
+                int categoryIdx = donut && typeIdx >= 0 ? typeIdx : nameIdx;
+                reduced = foldTail(reduced, categoryIdx, valueIdx, donut ? donutMaxCategories : barMaxCategories);
+            }
+        }
+        if (line) {
+            reduced = downsample(reduced, nameIdx, typeIdx, valueIdx);
+        }
+        rowsAfter.record(reduced.getRowCount());
+        return reduced;
+    }
+
+    private static ColumnarResult sumDuplicates(ColumnarResult result, int nameIdx, int typeIdx, int valueIdx) {
+        ColumnarResult.ColumnVector name = nameIdx >= 0 ? result.getData().get(nameIdx) : null;
+        ColumnarResult.ColumnVector type = typeIdx >= 0 ? result.getData().get(typeIdx) : null;
+        Map<String, Integer> groups = new HashMap<>();
+        List<Integer> firstRows = new ArrayList<>();
+        int[] groupOfRow = new int[result.getRowCount()];
+        for (int row = 0; row < result.getRowCount(); row++) {
+            String key = (name == null ? "" : name.getString(row)) + '\u0000' + (type == null ? "" : type.getString(row));
+            Integer group = groups.get(key);
+            if (group == null) {
+                group = firstRows.size();
+                groups.put(key, group);
+                firstRows.add(row);
+            }
+            groupOfRow[row] = group;
+        }
+        if (firstRows.size() == result.getRowCount()) {
+            return result;
+        }
+        ColumnarResult grouped = result.take(firstRows.stream().mapToInt(Integer::intValue).toArray());
+        return grouped.withColumn(valueIdx, sumByGroup(result.getData().get(valueIdx), groupOfRow, firstRows.size()));
+    }
+
+    private static ColumnarResult foldTail(ColumnarResult result, int categoryIdx, int valueIdx, int maxCategories) {
+        int rowCount = result.getRowCount();
+        if (rowCount <= maxCategories || categoryIdx < 0 || result.getColumns().size() != 2
+                || !(result.getData().get(categoryIdx) instanceof ColumnarResult.DictionaryVector)) {
+            return result;
+        }
+        ColumnarResult.ColumnVector value = result.getData().get(valueIdx);
+        Integer[] bySize = new Integer[rowCount];
+        for (int row = 0; row < rowCount; row++) {
+            bySize[row] = row;
+        }
+        Arrays.sort(bySize, Comparator.comparingDouble((Integer row) -> value.isNull(row) ? Double.NEGATIVE_INFINITY : value.getDouble(row)).reversed());
+        boolean[] kept = new boolean[rowCount];
+        for (int i = 0; i < maxCategories - 1; i++) {
+            kept[bySize[i]] = true;
+        }
+        ColumnarResult.DictionaryVector category = (ColumnarResult.DictionaryVector) result.getData().get(categoryIdx);
+        String[] dictionary = category.getDictionary();
+        int otherCode = Arrays.asList(dictionary).indexOf(OTHER);
+        // kept categories stay in query order, "Other" goes last unless a kept category already has that name
+        int keptCount = maxCategories - 1;
+        int[] keptRows = new int[keptCount];
+        int otherGroup = keptCount;
+        for (int row = 0, next = 0; row < rowCount; row++) {
+            if (kept[row]) {
+                if (otherCode >= 0 && category.getCodes()[row] == otherCode) {
+                    otherGroup = next;
+                }
+                keptRows[next++] = row;
+            }
+        }
+        int[] groupOfRow = new int[rowCount];
+        for (int row = 0, next = 0; row < rowCount; row++) {
+            groupOfRow[row] = kept[row] ? next++ : otherGroup;
+        }
+        int groupCount = otherGroup == keptCount ? keptCount + 1 : keptCount;
+
+        if (otherCode < 0) {
+            otherCode = dictionary.length;
+            dictionary = Arrays.copyOf(dictionary, dictionary.length + 1);
+            dictionary[otherCode] = OTHER;
+        }
+        int[] codes = new int[groupCount];
+        for (int i = 0; i < keptCount; i++) {
+            codes[i] = category.getCodes()[keptRows[i]];
+        }
+        if (groupCount > keptCount) {
+            codes[keptCount] = otherCode;
+        }
+
+        ColumnarResult.ColumnVector[] data = new ColumnarResult.ColumnVector[2];
+        data[categoryIdx] = new ColumnarResult.DictionaryVector(dictionary, codes);
+        data[valueIdx] = sumByGroup(value, groupOfRow, groupCount);
+        return new ColumnarResult(result.getColumns(), result.getColumnTypes(), groupCount, Arrays.asList(data));
+    }
+
+    private ColumnarResult downsample(ColumnarResult result, int nameIdx, int typeIdx, int valueIdx) {
+        if (result.getRowCount() <= maxPointsPerSeries) {
+            return result;
+        }
+        ColumnarResult.ColumnVector type = typeIdx >= 0 ? result.getData().get(typeIdx) : null;
+        Map<String, List<Integer>> series = new LinkedHashMap<>();
+        for (int row = 0; row < result.getRowCount(); row++) {
+            series.computeIfAbsent(type == null ? "" : type.getString(row), key -> new ArrayList<>()).add(row);
+        }
+        ColumnarResult.ColumnVector name = nameIdx >= 0 ? result.getData().get(nameIdx) : null;
+        ColumnarResult.ColumnVector value = result.getData().get(valueIdx);
+        boolean[] selected = new boolean[result.getRowCount()];
+        int selectedCount = 0;
+        for (List<Integer> seriesRows : series.values()) {
+            int[] rows = seriesRows.stream().mapToInt(Integer::intValue).toArray();
+            if (rows.length <= maxPointsPerSeries) {
+                for (int row : rows) {
+                    selected[row] = true;
+                }
+                selectedCount += rows.length;
+                continue;
+            }
+            double[] y = new double[rows.length];
+            for (int i = 0; i < rows.length; i++) {
+                y[i] = value.isNull(rows[i]) ? 0 : value.getDouble(rows[i]);
+            }
+            for (int picked : largestTriangleThreeBuckets(xValues(name, rows), y, maxPointsPerSeries)) {
+                selected[rows[picked]] = true;
+                selectedCount++;
+            }
+        }
+        if (selectedCount == result.getRowCount()) {
+            return result;
+        }
+        int[] keptRows = new int[selectedCount];
+        for (int row = 0, next = 0; row < selected.length; row++) {
+            if (selected[row]) {
+                keptRows[next++] = row;
+            }
+        }
+        return result.take(keptRows);
+    }
+
+    /**
+     * Indexes of the points to keep, always including the first and the last one.
+     */
+    static int[] largestTriangleThreeBuckets(double[] x, double[] y, int threshold) {
+        int length = x.length;
+        if (threshold >= length || threshold < 3) {
+            int[] all = new int[length];
+            for (int i = 0; i < length; i++) {
+                all[i] = i;
+            }
+            return all;
+        }
+        int[] sampled = new int[threshold];
+        double bucketSize = (double) (length - 2) / (threshold - 2);
+        int a = 0;
+        for (int bucket = 0; bucket < threshold - 2; bucket++) {
+            int nextStart = (int) Math.floor((bucket + 1) * bucketSize) + 1;
+            int nextEnd = Math.min((int) Math.floor((bucket + 2) * bucketSize) + 1, length);
+            double avgX = 0;
+            double avgY = 0;
+            for (int i = nextStart; i < nextEnd; i++) {
+                avgX += x[i];
+                avgY += y[i];
+            }
+            int nextLength = Math.max(1, nextEnd - nextStart);
+            avgX /= nextLength;
+            avgY /= nextLength;
+
+            int rangeStart = (int) Math.floor(bucket * bucketSize) + 1;
+            int rangeEnd = nextStart;
+            double maxArea = -1;
+            int next = rangeStart;
+            for (int i = rangeStart; i < rangeEnd; i++) {
+                double area = Math.abs((x[a] - avgX) * (y[i] - y[a]) - (x[a] - x[i]) * (avgY - y[a]));
+                if (area > maxArea) {
+                    maxArea = area;
+                    next = i;
+                }
+            }
+            sampled[bucket + 1] = next;
+            a = next;
+        }
+        sampled[threshold - 1] = length - 1;
+        return sampled;
+    }
+
+    /**
+     * X positions of a series: numeric names as is, dates and date times as epoch seconds, row position otherwise.
+     */
+    private static double[] xValues(ColumnarResult.ColumnVector name, int[] rows) {
+        double[] x = new double[rows.length];
+        boolean usable = name != null;
+        for (int i = 0; usable && i < rows.length; i++) {
+            if (name.isNull(rows[i])) {
+                usable = false;
+            } else if (name.isNumeric()) {
+                x[i] = name.getDouble(rows[i]);
+            } else {
+                Double time = parseTime(name.getString(rows[i]));
+                usable = time != null;
+                x[i] = usable ? time : 0;
+            }
+            usable = usable && (i == 0 || x[i] >= x[i - 1]);
+        }
+        if (!usable) {
+            for (int i = 0; i < rows.length; i++) {
+                x[i] = i;
+            }
+        }
+        return x;
+    }
+
+    private static Double parseTime(String text) {
+        try {
+            if (text.length() == 10) {
+                return (double) LocalDate.parse(text).toEpochDay() * 86400;
+            }
+            if (text.length() >= 19) {
+                return (double) LocalDateTime.parse(text.substring(0, 19).replace(' ', 'T')).toEpochSecond(ZoneOffset.UTC);
+            }
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+        return null;
+    }
+
+    private static ColumnarResult.ColumnVector sumByGroup(ColumnarResult.ColumnVector value, int[] groupOfRow, int groupCount) {
+        boolean[] hasValue = new boolean[groupCount];
+        ColumnarResult.ColumnVector summed;
+        if (value instanceof ColumnarResult.DoubleVector) {
+            double[] values = ((ColumnarResult.DoubleVector) value).getValues();
+            double[] sums = new double[groupCount];
+            for (int row = 0; row < groupOfRow.length; row++) {
+                if (!value.isNull(row)) {
+                    sums[groupOfRow[row]] += values[row];
+                    hasValue[groupOfRow[row]] = true;
+                }
+            }
+            summed = new ColumnarResult.DoubleVector(sums, nullGroups(hasValue));
+        } else if (value instanceof ColumnarResult.DecimalVector) {
+            BigDecimal[] sums = new BigDecimal[groupCount];
+            for (int row = 0; row < groupOfRow.length; row++) {
+                if (!value.isNull(row)) {
+                    BigDecimal decimal = ((ColumnarResult.DecimalVector) value).getDecimal(row);
+                    sums[groupOfRow[row]] = sums[groupOfRow[row]] == null ? decimal : sums[groupOfRow[row]].add(decimal);
+                }
+            }
+            String[] values = new String[groupCount];
+            for (int group = 0; group < groupCount; group++) {
+                values[group] = sums[group] == null ? null : sums[group].toPlainString();
+            }
+            summed = new ColumnarResult.DecimalVector(values);
+        } else {
+            long[] sums = new long[groupCount];
+            for (int row = 0; row < groupOfRow.length; row++) {
+                if (!value.isNull(row)) {
+                    sums[groupOfRow[row]] += value instanceof ColumnarResult.LongVector
+                            ? ((ColumnarResult.LongVector) value).getValues()[row]
+                            : ((ColumnarResult.IntVector) value).getValues()[row];
+                    hasValue[groupOfRow[row]] = true;
+                }
+            }
+            summed = new ColumnarResult.LongVector(sums, nullGroups(hasValue));
+        }
+        return summed;
+    }
+
+    private static int[] nullGroups(boolean[] hasValue) {
+        int[] nulls = new int[hasValue.length];
+        int count = 0;
+        for (int group = 0; group < hasValue.length; group++) {
+            if (!hasValue[group]) {
+                nulls[count++] = group;
+            }
+        }
+        return Arrays.copyOf(nulls, count);
+    }
+
+    private static boolean hasOnlyAliasColumns(ColumnarResult result) {
+        for (String column : result.getColumns()) {
+            if (!NAME.equalsIgnoreCase(column) && !TYPE.equalsIgnoreCase(column) && !VALUE.equalsIgnoreCase(column)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int indexOf(ColumnarResult result, String alias) {
+        List<String> columns = result.getColumns();
+        for (int i = 0; i < columns.size(); i++) {
+            if (alias.equalsIgnoreCase(columns.get(i))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+}
@@ -1,37 +1,81 @@
 package com.kapture.nlpdashboardservice.component;
 
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.sql.Connection;
-import java.sql.DriverManager;
+import java.util.ArrayList;
+import java.util.List;
 
 @Component
 @Slf4j
 public class ClickHouseDBManager {
 
-    private static String dbUrl;
-    private static String user;
-    private static String password;
+    private final HikariDataSource dataSource;
+    private final int minIdle;
 
     @Autowired
-    public ClickHouseDBManager(@Value("${spring.main.clickhouse.datasource.url}") String _url,
-                               @Value("${spring.main.clickhouse.datasource.username}") String _user,
-                               @Value("${spring.main.clickhouse.datasource.password}") String _password) {
-        dbUrl = _url;
-        user = _user;
-        password = _password;
+    public ClickHouseDBManager(@Value("${spring.main.clickhouse.datasource.url}") String url,
+                               @Value("${spring.main.clickhouse.datasource.username}") String user,
+                               @Value("${spring.main.clickhouse.datasource.password}") String password,
+                               @Value("${spring.main.clickhouse.pool.min-idle:2}") int minIdle,
+                               @Value("${spring.main.clickhouse.pool.max-size:10}") int maxSize,
+                               @Value("${spring.main.clickhouse.pool.connection-timeout-ms:10000}") long connectionTimeout,
+                               @Value("${spring.main.clickhouse.pool.validation-timeout-ms:3000}") long validationTimeout,
+                               @Value("${spring.main.clickhouse.pool.idle-timeout-ms:600000}") long idleTimeout,
+                               @Value("${spring.main.clickhouse.pool.max-lifetime-ms:1800000}") long maxLifetime,
+                               @Value("${spring.main.clickhouse.pool.leak-detection-threshold-ms:60000}") long leakDetectionThreshold,
+                               MeterRegistry meterRegistry) {
+        this.minIdle = minIdle;
+
+        HikariConfig hikariConfig = new HikariConfig();
+        hikariConfig.setJdbcUrl(url);
+        hikariConfig.setUsername(user);
+        hikariConfig.setPassword(password);
+        hikariConfig.setPoolName("clickhouse");
+
+        hikariConfig.setMinimumIdle(minIdle);
+        hikariConfig.setMaximumPoolSize(maxSize);
+        hikariConfig.setConnectionTimeout(connectionTimeout);
+        hikariConfig.setValidationTimeout(validationTimeout);
+        hikariConfig.setIdleTimeout(idleTimeout);
+        hikariConfig.setMaxLifetime(maxLifetime);
+        hikariConfig.setLeakDetectionThreshold(leakDetectionThreshold);
+        hikariConfig.setConnectionTestQuery("SELECT 1");
+        // do not fail application startup if clickhouse is briefly unreachable, warm-up logs it instead
+        hikariConfig.setInitializationFailTimeout(-1);
+        // exposes hikaricp.connections.active / idle / pending / acquire on /actuator/metrics
+        hikariConfig.setMetricRegistry(meterRegistry);
+
+        this.dataSource = new HikariDataSource(hikariConfig);
     }
 
-    public static Connection getConnection() {
+    @PostConstruct
+    public void warmUp() {
+        List<Connection> connections = new ArrayList<>();
         try {
-//            Properties props = new Properties();
-//            props.setProperty(ClickHouseClientOption.RENAME_RESPONSE_COLUMN.getKey(),ClickHouseRenameMethod.TO_CAMELCASE_WITHOUT_PREFIX.name());
-            return DriverManager.getConnection(dbUrl, user, password);
+            for (int i = 0; i < minIdle; i++) {
+                connections.add(dataSource.getConnection());
+            }
+            log.info("Clickhouse pool warmed up with {} connections", connections.size());
+        } catch (Exception e) {
+            log.error("Error in clickhouse pool warmUp", e);
+        } finally {
+            connections.forEach(ClickHouseDBManager::closeConn);
+        }
+    }
+
+    public Connection getConnection() {
+        try {
+            return dataSource.getConnection();
         } catch (Exception e) {
-            e.printStackTrace();
             log.error("Error clickhouse getConnection: ", e);
             throw new RuntimeException("Clickhouse Connection Error");
         }
@@ -46,4 +90,9 @@ public class ClickHouseDBManager {
             log.error("Error in clickhouse closeConn", e);
         }
     }
+
+    @PreDestroy
+    public void shutdown() {
+        dataSource.close();
+    }
 }
@@ -0,0 +1,75 @@
+package com.kapture.nlpdashboardservice.component;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded executors for each stage of the dashboard pipeline, so a slow dependency
+ * only queues work for its own stage. A full queue rejects the task instead of growing.
+ */
+@Component
+@Getter
+@Slf4j
+public class DashboardExecutors {
+
+    private final ThreadPoolExecutor schemaExecutor;
+    private final ThreadPoolExecutor llmExecutor;
+    private final ThreadPoolExecutor clickHouseExecutor;
+    private final ThreadPoolExecutor cacheWriteExecutor;
+    // completes futures handed out by single-purpose worker threads, so callers' continuations never run on those workers
+    private final ThreadPoolExecutor callbackExecutor;
+
+    @Autowired
+    public DashboardExecutors(@Value("${nlp.executor.schema.threads:8}") int schemaThreads,
+                              @Value("${nlp.executor.schema.queue-size:200}") int schemaQueueSize,
+                              @Value("${nlp.executor.llm.threads:20}") int llmThreads,
+                              @Value("${nlp.executor.llm.queue-size:200}") int llmQueueSize,
+                              @Value("${nlp.executor.clickhouse.threads:10}") int clickHouseThreads,
+                              @Value("${nlp.executor.clickhouse.queue-size:200}") int clickHouseQueueSize,
+                              @Value("${nlp.executor.cache-write.threads:2}") int cacheWriteThreads,
+                              @Value("${nlp.executor.cache-write.queue-size:1000}") int cacheWriteQueueSize,
+                              @Value("${nlp.executor.callback.threads:8}") int callbackThreads,
+                              @Value("${nlp.executor.callback.queue-size:2000}") int callbackQueueSize,
+                              MeterRegistry meterRegistry) {
+        this.schemaExecutor = buildExecutor("nlp-schema-", schemaThreads, schemaQueueSize, meterRegistry);
+        this.llmExecutor = buildExecutor("nlp-llm-", llmThreads, llmQueueSize, meterRegistry);
+        this.clickHouseExecutor = buildExecutor("nlp-clickhouse-", clickHouseThreads, clickHouseQueueSize, meterRegistry);
+        this.cacheWriteExecutor = buildExecutor("nlp-cache-write-", cacheWriteThreads, cacheWriteQueueSize, meterRegistry);
+        this.callbackExecutor = buildExecutor("nlp-callback-", callbackThreads, callbackQueueSize, meterRegistry);
+    }
+
+    private static ThreadPoolExecutor buildExecutor(String threadNamePrefix, int threads, int queueSize, MeterRegistry meterRegistry) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueSize), new CustomizableThreadFactory(threadNamePrefix), new ThreadPoolExecutor.AbortPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        new ExecutorServiceMetrics(executor, threadNamePrefix.substring(0, threadNamePrefix.length() - 1), Tags.empty()).bindTo(meterRegistry);
+        return executor;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        for (ThreadPoolExecutor executor : new ThreadPoolExecutor[]{schemaExecutor, llmExecutor, clickHouseExecutor, cacheWriteExecutor, callbackExecutor}) {
+            executor.shutdown();
+        }
+        try {
+            // let queued redis writes finish before the redisson client goes away
+            if (!cacheWriteExecutor.awaitTermination(10, TimeUnit.SECONDS)) {
+                log.warn("Cache write executor did not drain before shutdown");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
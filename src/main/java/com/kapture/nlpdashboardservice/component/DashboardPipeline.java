@@ -0,0 +1,157 @@
+package com.kapture.nlpdashboardservice.component;
+
+import com.kapture.nlpdashboardservice.exception.KaptureException;
+import com.kapture.nlpdashboardservice.repository.clickhouse.ClickHouseRepository;
+import com.kapture.nlpdashboardservice.utility.BaseResponse;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Runs the steps of a dashboard request on the executor of their stage, each with its own timeout. A stage that
+ * times out or whose request is cancelled is stopped: its ClickHouse query is cancelled and its worker interrupted.
+ */
+@Component
+@Slf4j
+public class DashboardPipeline {
+
+    private final DashboardExecutors dashboardExecutors;
+    private final ClickHouseRepository clickHouseRepository;
+    private final long schemaTimeoutMs;
+    private final long llmTimeoutMs;
+    @Getter
+    private final long clickHouseTimeoutMs;
+
+    @Autowired
+    public DashboardPipeline(DashboardExecutors dashboardExecutors,
+                             ClickHouseRepository clickHouseRepository,
+                             @Value("${nlp.pipeline.schema-timeout-ms:15000}") long schemaTimeoutMs,
+                             @Value("${nlp.pipeline.llm-timeout-ms:90000}") long llmTimeoutMs,
+                             @Value("${nlp.pipeline.clickhouse-timeout-ms:60000}") long clickHouseTimeoutMs) {
+        this.dashboardExecutors = dashboardExecutors;
+        this.clickHouseRepository = clickHouseRepository;
+        this.schemaTimeoutMs = schemaTimeoutMs;
+        this.llmTimeoutMs = llmTimeoutMs;
+        this.clickHouseTimeoutMs = clickHouseTimeoutMs;
+    }
+
+    public <T> CompletableFuture<T> schemaStage(BooleanSupplier cancelled, PipelineStage<T> pipelineStage) {
+        return stage(dashboardExecutors.getSchemaExecutor(), schemaTimeoutMs, cancelled, pipelineStage);
+    }
+
+    public <T> CompletableFuture<T> llmStage(BooleanSupplier cancelled, PipelineStage<T> pipelineStage) {
+        return stage(dashboardExecutors.getLlmExecutor(), llmTimeoutMs, cancelled, pipelineStage);
+    }
+
+    public <T> CompletableFuture<T> clickHouseStage(BooleanSupplier cancelled, PipelineStage<T> pipelineStage) {
+        return stage(dashboardExecutors.getClickHouseExecutor(), clickHouseTimeoutMs, cancelled, pipelineStage);
+    }
+
+    private <T> CompletableFuture<T> stage(ExecutorService executor, long timeoutMs, BooleanSupplier cancelled, PipelineStage<T> pipelineStage) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        AtomicReference<Thread> worker = new AtomicReference<>();
+        Future<?> task;
+        try {
+            task = executor.submit(() -> {
+                worker.set(Thread.currentThread());
+                try {
+                    if (cancelled.getAsBoolean()) {
+                        throw new CancellationException("Dashboard generation cancelled");
+                    }
+                    result.complete(unchecked(pipelineStage));
+                } catch (Throwable e) {
+                    result.completeExceptionally(e instanceof CompletionException ? e : new CompletionException(e));
+                } finally {
+                    synchronized (worker) {
+                        worker.set(null);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        // a timed out or cancelled stage stops its work instead of letting it run on: the ClickHouse query is
+        // cancelled and the worker interrupted; the lock keeps us from touching the worker's next task.
+        // failures of the stage itself arrive wrapped in a CompletionException and need no cancelling
+        result.orTimeout(timeoutMs, TimeUnit.MILLISECONDS).whenComplete((value, e) -> {
+            if (!(e instanceof TimeoutException || e instanceof CancellationException)) {
+                return;
+            }
+            synchronized (worker) {
+                Thread running = worker.get();
+                if (running != null) {
+                    clickHouseRepository.cancelRunningQuery(running);
+                }
+            }
+            task.cancel(true);
+        });
+        return result;
+    }
+
+    /**
+     * Runs the work once the tenant's permit is granted and hands the slot back when it finishes.
+     */
+    public static <T> CompletableFuture<T> admitted(CompletableFuture<TenantAdmissionController.Permit> permitFuture,
+                                                    Supplier<CompletableFuture<T>> work) {
+        return permitFuture.thenCompose(permit -> {
+            try {
+                return work.get().whenComplete((result, e) -> permit.release());
+            } catch (RuntimeException e) {
+                permit.release();
+                throw e;
+            }
+        });
+    }
+
+    public static <T> T unchecked(PipelineStage<T> pipelineStage) {
+        try {
+            return pipelineStage.run();
+        } catch (KaptureException e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    public ResponseEntity<?> toErrorResponse(String operation, Throwable throwable) {
+        Throwable cause = throwable;
+        while ((cause instanceof CompletionException || cause instanceof ExecutionException) && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        if (cause instanceof KaptureException) {
+            log.warn("KaptureException in " + operation + ((KaptureException) cause).getBaseResponse());
+            return ((KaptureException) cause).getBaseResponse();
+        }
+        if (cause instanceof TimeoutException || cause instanceof CancellationException) {
+            log.warn("Timeout in {}", operation);
+            return BaseResponse.error(HttpStatus.GATEWAY_TIMEOUT, "Dashboard generation timed out, please retry!");
+        }
+        if (cause instanceof RejectedExecutionException) {
+            log.warn("Executor saturated in {}", operation);
+            return BaseResponse.error(HttpStatus.SERVICE_UNAVAILABLE, "Server is busy, please retry!");
+        }
+        log.error("Error in " + operation, cause);
+        return BaseResponse.error(cause instanceof Exception ? (Exception) cause : new RuntimeException(cause));
+    }
+
+    @FunctionalInterface
+    public interface PipelineStage<T> {
+        T run() throws KaptureException;
+    }
+
+}
@@ -0,0 +1,193 @@
+package com.kapture.nlpdashboardservice.component;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kapture.nlpdashboardservice.dto.QuerySettings;
+import com.kapture.nlpdashboardservice.exception.KaptureException;
+import com.kapture.nlpdashboardservice.repository.clickhouse.ClickHouseRepository;
+import com.kapture.nlpdashboardservice.repository.clickhouse.ClickHouseRowConsumer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Streams a dashboard query to the client as newline delimited JSON straight from the ClickHouse cursor: a header
+ * line, one array per row and a closing end or error line. Each open stream holds a ClickHouse connection and a
+ * running query until its client has read every row, so only a few run at once.
+ */
+@Component
+@Slf4j
+public class NdJsonDashboardStreamer {
+
+    private static final MediaType NDJSON = MediaType.parseMediaType("application/x-ndjson");
+
+    private final ClickHouseRepository clickHouseRepository;
+    private final ObjectMapper objectMapper;
+    private final Semaphore streamSlots;
+    private final int fetchSize;
+    private final int flushRows;
+    private final long idleTimeoutMs;
+
+    @Autowired
+    public NdJsonDashboardStreamer(ClickHouseRepository clickHouseRepository,
+                                   ObjectMapper objectMapper,
+                                   @Value("${nlp.dashboard.stream.max-concurrent:8}") int maxConcurrent,
+                                   @Value("${nlp.dashboard.stream.fetch-size:1000}") int fetchSize,
+                                   @Value("${nlp.dashboard.stream.flush-rows:500}") int flushRows,
+                                   @Value("${nlp.dashboard.stream.idle-timeout-ms:30000}") long idleTimeoutMs) {
+        this.clickHouseRepository = clickHouseRepository;
+        this.objectMapper = objectMapper;
+        this.streamSlots = new Semaphore(maxConcurrent);
+        this.fetchSize = fetchSize;
+        this.flushRows = flushRows;
+        this.idleTimeoutMs = idleTimeoutMs;
+    }
+
+    public boolean tryAcquireSlot() {
+        return streamSlots.tryAcquire();
+    }
+
+    public void releaseSlot() {
+        streamSlots.release();
+    }
+
+    /**
+     * A response streaming the rows of the checked query. onStreamed runs once every row reached the client,
+     * onFinished runs whenever the body is done, also when the client went away.
+     */
+    public ResponseEntity<StreamingResponseBody> toStreamingResponse(QueryCostGuard.CheckedQuery checkedQuery, QuerySettings querySettings,
+                                                                     int promptId, String dashboardType, Runnable onStreamed, Runnable onFinished) {
+        StreamingResponseBody body = outputStream -> {
+            try {
+                write(outputStream, checkedQuery, querySettings, promptId, dashboardType, onStreamed);
+            } finally {
+                onFinished.run();
+            }
+        };
+        return ResponseEntity.ok().contentType(NDJSON).body(body);
+    }
+
+    public ResponseEntity<StreamingResponseBody> toStreamingError(ResponseEntity<?> error) {
+        return ResponseEntity.status(error.getStatusCode()).headers(error.getHeaders()).contentType(MediaType.APPLICATION_JSON)
+                .body(outputStream -> objectMapper.writeValue(outputStream, error.getBody()));
+    }
+
+    private void write(OutputStream outputStream, QueryCostGuard.CheckedQuery checkedQuery, QuerySettings querySettings, int promptId,
+                       String dashboardType, Runnable onStreamed) throws IOException {
+        JsonGenerator generator = objectMapper.getFactory().createGenerator(outputStream);
+        generator.setRootValueSeparator(new SerializedString("\n"));
+        try {
+            // a client that went away fails this with an IOException, so onStreamed never runs for an abandoned stream
+            int rowCount = clickHouseRepository.streamListOfDataFromSql(checkedQuery.getSql(), querySettings, fetchSize, idleTimeoutMs,
+                    new NdJsonRowWriter(outputStream, generator, promptId, dashboardType, checkedQuery.getSampleRatio(), flushRows));
+            onStreamed.run();
+            generator.writeStartObject();
+            generator.writeStringField("type", "end");
+            generator.writeNumberField("rowCount", rowCount);
+            generator.writeEndObject();
+        } catch (KaptureException ke) {
+            generator.writeStartObject();
+            generator.writeStringField("type", "error");
+            generator.writeStringField("message", ke.getBaseResponse().getBody() != null
+                    ? ke.getBaseResponse().getBody().getMessage() : "Something went wrong!");
+            generator.writeEndObject();
+        }
+        generator.writeRaw('\n');
+        generator.flush();
+    }
+
+    private static class NdJsonRowWriter implements ClickHouseRowConsumer {
+
+        private final OutputStream outputStream;
+        private final JsonGenerator generator;
+        private final int promptId;
+        private final String dashboardType;
+        private final Double sampleRatio;
+        private final int flushRows;
+        private int pendingRows;
+
+        NdJsonRowWriter(OutputStream outputStream, JsonGenerator generator, int promptId, String dashboardType, Double sampleRatio, int flushRows) {
+            this.outputStream = outputStream;
+            this.generator = generator;
+            this.promptId = promptId;
+            this.dashboardType = dashboardType;
+            this.sampleRatio = sampleRatio;
+            this.flushRows = flushRows;
+        }
+
+        @Override
+        public void onColumns(List<String> columnNames, List<String> columnTypes) throws IOException {
+            generator.writeStartObject();
+            generator.writeStringField("type", "header");
+            generator.writeNumberField("promptId", promptId);
+            generator.writeStringField("dashboardType", dashboardType);
+            if (sampleRatio != null) {
+                generator.writeBooleanField("approximate", true);
+                generator.writeNumberField("sampleRatio", sampleRatio);
+            }
+            generator.writeArrayFieldStart("dashboardColumns");
+            for (String columnName : columnNames) {
+                generator.writeString(columnName);
+            }
+            generator.writeEndArray();
+            generator.writeArrayFieldStart("columnTypes");
+            for (String columnType : columnTypes) {
+                generator.writeString(columnType);
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+            generator.flush();
+        }
+
+        @Override
+        public void onRow(Object[] values) throws IOException {
+            generator.writeStartArray();
+            for (Object value : values) {
+                if (value == null) {
+                    generator.writeNull();
+                } else if (value instanceof Number) {
+                    writeNumber((Number) value);
+                } else {
+                    generator.writeString(String.valueOf(value));
+                }
+            }
+            generator.writeEndArray();
+            if (++pendingRows >= flushRows) {
+                generator.flush();
+                pendingRows = 0;
+            }
+        }
+
+        // closes the response under the writer, the blocked write and every later one fail with an IOException
+        @Override
+        public void abort() throws IOException {
+            outputStream.close();
+        }
+
+        // UInt64 arrives as BigInteger and Decimal as BigDecimal, both are written without losing digits
+        private void writeNumber(Number value) throws IOException {
+            if (value instanceof BigDecimal) {
+                generator.writeNumber((BigDecimal) value);
+            } else if (value instanceof BigInteger) {
+                generator.writeNumber((BigInteger) value);
+            } else if (value instanceof Double || value instanceof Float) {
+                generator.writeNumber(value.doubleValue());
+            } else {
+                generator.writeNumber(value.longValue());
+            }
+        }
+    }
+
+}
@@ -0,0 +1,181 @@
+package com.kapture.nlpdashboardservice.component;
+
+import com.kapture.nlpdashboardservice.exception.KaptureException;
+import com.kapture.nlpdashboardservice.utility.BaseResponse;
+import dev.ai4j.openai4j.OpenAiHttpException;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.model.StreamingResponseHandler;
+import dev.langchain4j.model.openai.OpenAiChatModel;
+import dev.langchain4j.model.openai.OpenAiStreamingChatModel;
+import dev.langchain4j.model.output.Response;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+@Component
+@Slf4j
+public class OpenAiModelManager {
+
+    private final OpenAiChatModel chatModel;
+    private final OpenAiStreamingChatModel streamingChatModel;
+    private final Semaphore inFlightCalls;
+    private final long acquireTimeoutMs;
+    private final int maxRetries;
+    private final long retryBaseDelayMs;
+    private final long retryMaxDelayMs;
+    private final MeterRegistry meterRegistry;
+
+    @Autowired
+    public OpenAiModelManager(@Value("${openai.apiKey}") String apiKey,
+                              @Value("${openai.model-name:gpt-3.5-turbo}") String modelName,
+                              @Value("${openai.timeout-ms:60000}") long timeoutMs,
+                              @Value("${openai.max-concurrent-calls:20}") int maxConcurrentCalls,
+                              @Value("${openai.acquire-timeout-ms:5000}") long acquireTimeoutMs,
+                              @Value("${openai.max-retries:2}") int maxRetries,
+                              @Value("${openai.retry-base-delay-ms:500}") long retryBaseDelayMs,
+                              @Value("${openai.retry-max-delay-ms:8000}") long retryMaxDelayMs,
+                              MeterRegistry meterRegistry) {
+        // one model (and so one OkHttp client with its connection pool) for the whole application;
+        // langchain4j applies the timeout to connect, read and write alike
+        this.chatModel = OpenAiChatModel.builder()
+                .apiKey(apiKey)
+                .modelName(modelName)
+                .timeout(Duration.ofMillis(timeoutMs))
+                .maxRetries(0)
+                .build();
+        this.streamingChatModel = OpenAiStreamingChatModel.builder()
+                .apiKey(apiKey)
+                .modelName(modelName)
+                .timeout(Duration.ofMillis(timeoutMs))
+                .build();
+        this.inFlightCalls = new Semaphore(maxConcurrentCalls, true);
+        this.acquireTimeoutMs = acquireTimeoutMs;
+        this.maxRetries = maxRetries;
+        this.retryBaseDelayMs = retryBaseDelayMs;
+        this.retryMaxDelayMs = retryMaxDelayMs;
+        this.meterRegistry = meterRegistry;
+        meterRegistry.gauge("nlp.llm.calls.available", inFlightCalls, Semaphore::availablePermits);
+    }
+
+    public String generate(String prompt) throws KaptureException {
+        acquirePermit();
+        try {
+            for (int attempt = 0; ; attempt++) {
+                long start = System.nanoTime();
+                try {
+                    String reply = chatModel.generate(prompt);
+                    recordLatency(start, "success");
+                    return reply;
+                } catch (RuntimeException e) {
+                    boolean transientError = isTransient(e);
+                    recordLatency(start, transientError ? "transient_error" : "error");
+                    if (!transientError || attempt >= maxRetries) {
+                        log.error("Error in openai generate after {} attempts", attempt + 1, e);
+                        throw new KaptureException(BaseResponse.error(HttpStatus.SERVICE_UNAVAILABLE, "AI service is not responding, please retry!"));
+                    }
+                    sleepWithJitter(attempt);
+                }
+            }
+        } finally {
+            inFlightCalls.release();
+        }
+    }
+
+    /**
+     * Streams the completion token by token. The bulkhead permit is held until the handler
+     * sees onComplete or onError; streamed calls are not retried since tokens may already be delivered.
+     */
+    public void generateStreaming(String prompt, StreamingResponseHandler<AiMessage> handler) throws KaptureException {
+        acquirePermit();
+        long start = System.nanoTime();
+        AtomicBoolean released = new AtomicBoolean();
+        Runnable release = () -> {
+            if (released.compareAndSet(false, true)) {
+                inFlightCalls.release();
+            }
+        };
+        try {
+            streamingChatModel.generate(prompt, new StreamingResponseHandler<AiMessage>() {
+                @Override
+                public void onNext(String token) {
+                    handler.onNext(token);
+                }
+
+                @Override
+                public void onComplete(Response<AiMessage> response) {
+                    release.run();
+                    recordLatency(start, "success");
+                    handler.onComplete(response);
+                }
+
+                @Override
+                public void onError(Throwable error) {
+                    release.run();
+                    recordLatency(start, "error");
+                    handler.onError(error);
+                }
+            });
+        } catch (RuntimeException e) {
+            release.run();
+            recordLatency(start, "error");
+            log.error("Error in openai generateStreaming", e);
+            throw new KaptureException(BaseResponse.error(HttpStatus.SERVICE_UNAVAILABLE, "AI service is not responding, please retry!"));
+        }
+    }
+
+    private void acquirePermit() throws KaptureException {
+        try {
+            if (!inFlightCalls.tryAcquire(acquireTimeoutMs, TimeUnit.MILLISECONDS)) {
+                meterRegistry.counter("nlp.llm.calls.rejected").increment();
+                throw new KaptureException(BaseResponse.error(HttpStatus.SERVICE_UNAVAILABLE, "AI service is busy, please retry!"));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new KaptureException(BaseResponse.error(HttpStatus.SERVICE_UNAVAILABLE, "AI service is busy, please retry!"));
+        }
+    }
+
+    private void sleepWithJitter(int attempt) throws KaptureException {
+        // full jitter: uniform in [0, min(max, base * 2^attempt)]
+        long cap = Math.min(retryMaxDelayMs, retryBaseDelayMs << Math.min(attempt, 16));
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(cap + 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new KaptureException(BaseResponse.error(HttpStatus.SERVICE_UNAVAILABLE, "AI service is not responding, please retry!"));
+        }
+    }
+
+    private void recordLatency(long startNanos, String outcome) {
+        Timer.builder("nlp.llm.call")
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(meterRegistry)
+                .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private static boolean isTransient(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof IOException) {
+                return true;
+            }
+            if (cause instanceof OpenAiHttpException) {
+                int code = ((OpenAiHttpException) cause).code();
+                return code == 429 || code >= 500;
+            }
+        }
+        return false;
+    }
+
+}
@@ -0,0 +1,118 @@
+package com.kapture.nlpdashboardservice.component;
+
+import com.kapture.nlpdashboardservice.exception.KaptureException;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of each /generate pipeline stage as nlp.pipeline.stage{stage, dashboardType, outcome}, plus the
+ * sizes that explain it (prompt characters, ClickHouse rows and bytes). Outcome is success, rejected for
+ * 4xx errors such as guardrail hits, or error.
+ */
+@Component
+public class PipelineMetrics {
+
+    public static final String TABLE_MATCHING = "table_matching";
+    public static final String SCHEMA_LOOKUP = "schema_lookup";
+    public static final String SCHEMA_FETCH = "schema_fetch";
+    public static final String PROMPT_ASSEMBLY = "prompt_assembly";
+    public static final String LLM_SQL = "llm_sql";
+    public static final String SQL_VALIDATION = "sql_validation";
+    public static final String CLICKHOUSE_EXECUTION = "clickhouse_execution";
+    public static final String ROW_MAPPING = "row_mapping";
+    public static final String LLM_SUMMARY = "llm_summary";
+    public static final String PROMPT_PERSISTENCE = "prompt_persistence";
+
+    private final MeterRegistry meterRegistry;
+    private final Set<String> dashboardTypes;
+
+    @Autowired
+    public PipelineMetrics(MeterRegistry meterRegistry,
+                           @Value("${nlp.metrics.dashboard-types:table,text,number,barchart,donut,linechart}") Set<String> dashboardTypes) {
+        this.meterRegistry = meterRegistry;
+        this.dashboardTypes = dashboardTypes;
+    }
+
+    public <T> T time(String stage, String dashboardType, TimedStage<T> timedStage) throws KaptureException {
+        long start = System.nanoTime();
+        String outcome = "error";
+        try {
+            T result = timedStage.run();
+            outcome = "success";
+            return result;
+        } catch (KaptureException e) {
+            outcome = e.getBaseResponse().getStatusCode().is4xxClientError() ? "rejected" : "error";
+            throw e;
+        } finally {
+            record(stage, dashboardType, outcome, System.nanoTime() - start);
+        }
+    }
+
+    public <T> CompletableFuture<T> timeAsync(String stage, String dashboardType, CompletableFuture<T> future) {
+        long start = System.nanoTime();
+        return future.whenComplete((result, e) -> record(stage, dashboardType, e == null ? "success" : "error", System.nanoTime() - start));
+    }
+
+    public void recordSchemaLookup(String dashboardType, String source, int tables) {
+        if (tables > 0) {
+            meterRegistry.counter("nlp.schema.lookup", "dashboardType", tag(dashboardType), "source", source).increment(tables);
+        }
+    }
+
+    public void recordPromptSize(String dashboardType, int chars) {
+        DistributionSummary.builder("nlp.prompt.size")
+                .baseUnit("chars")
+                .tag("dashboardType", tag(dashboardType))
+                .publishPercentileHistogram()
+                .register(meterRegistry)
+                .record(chars);
+    }
+
+    public void recordQueryResult(String dashboardType, int rows, long bytes) {
+        DistributionSummary.builder("nlp.clickhouse.result.rows")
+                .tag("dashboardType", tag(dashboardType))
+                .publishPercentileHistogram()
+                .register(meterRegistry)
+                .record(rows);
+        DistributionSummary.builder("nlp.clickhouse.result.bytes")
+                .baseUnit("bytes")
+                .tag("dashboardType", tag(dashboardType))
+                .publishPercentileHistogram()
+                .register(meterRegistry)
+                .record(bytes);
+    }
+
+    private void record(String stage, String dashboardType, String outcome, long nanos) {
+        Timer.builder("nlp.pipeline.stage")
+                .tag("stage", stage)
+                .tag("dashboardType", tag(dashboardType))
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(meterRegistry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    // dashboard type comes from the request, unknown values share one tag to bound cardinality
+    private String tag(String dashboardType) {
+        if (dashboardType == null) {
+            return "none";
+        }
+        String type = dashboardType.toLowerCase(Locale.ROOT);
+        return dashboardTypes.contains(type) ? type : "other";
+    }
+
+    @FunctionalInterface
+    public interface TimedStage<T> {
+        T run() throws KaptureException;
+    }
+
+}
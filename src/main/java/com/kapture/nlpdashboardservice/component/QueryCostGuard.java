@@ -0,0 +1,197 @@
+package com.kapture.nlpdashboardservice.component;
+
+import com.kapture.nlpdashboardservice.dto.QueryEstimate;
+import com.kapture.nlpdashboardservice.dto.QuerySettings;
+import com.kapture.nlpdashboardservice.exception.KaptureException;
+import com.kapture.nlpdashboardservice.repository.clickhouse.ClickHouseRepository;
+import com.kapture.nlpdashboardservice.utility.BaseResponse;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import net.sf.jsqlparser.JSQLParserException;
+import net.sf.jsqlparser.expression.AnalyticExpression;
+import net.sf.jsqlparser.expression.ExpressionVisitorAdapter;
+import net.sf.jsqlparser.expression.Function;
+import net.sf.jsqlparser.parser.CCJSqlParserUtil;
+import net.sf.jsqlparser.schema.Table;
+import net.sf.jsqlparser.statement.Statement;
+import net.sf.jsqlparser.statement.select.PlainSelect;
+import net.sf.jsqlparser.statement.select.Select;
+import net.sf.jsqlparser.statement.select.SelectExpressionItem;
+import net.sf.jsqlparser.statement.select.SelectItem;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.regex.Pattern;
+
+/**
+ * Asks ClickHouse how many rows a generated query would read before running it. Queries over the limit are
+ * rewritten to SAMPLE their main table when they list rows for a table dashboard and that table has a sampling key,
+ * and rejected otherwise, so a few runaway prompts cannot hold ClickHouse threads for everyone else. Aggregating
+ * queries are never sampled, their counts and sums would come back short by the sample ratio.
+ */
+@Component
+@Slf4j
+public class QueryCostGuard {
+
+    private static final String TABLE_DASHBOARD = "table";
+    private static final Pattern AGGREGATE_FUNCTION = Pattern.compile("(?i)(count|sum|avg|min|max|any|anylast|anyheavy"
+            + "|argmin|argmax|uniq\\w*|quantile\\w*|median\\w*|group\\w*|topk\\w*|var\\w*|stddev\\w*|covar\\w*|corr\\w*"
+            + "|rankcorr|entropy|histogram|sequence\\w*|windowfunnel|retention|simplelinearregression|stochastic\\w*)"
+            + "(if|array|map|state|merge|mergestate|distinct|ornull|ordefault|resample|foreach)*");
+
+    private final ClickHouseRepository clickHouseRepository;
+    private final SchemaCatalog schemaCatalog;
+    private final MeterRegistry meterRegistry;
+    private final boolean enabled;
+    private final long maxEstimatedRows;
+    private final double minSampleRatio;
+
+    @Autowired
+    public QueryCostGuard(ClickHouseRepository clickHouseRepository,
+                          SchemaCatalog schemaCatalog,
+                          MeterRegistry meterRegistry,
+                          @Value("${nlp.query-cost.enabled:true}") boolean enabled,
+                          @Value("${nlp.query-cost.max-estimated-rows:100000000}") long maxEstimatedRows,
+                          @Value("${nlp.query-cost.min-sample-ratio:0.01}") double minSampleRatio) {
+        this.clickHouseRepository = clickHouseRepository;
+        this.schemaCatalog = schemaCatalog;
+        this.meterRegistry = meterRegistry;
+        this.enabled = enabled;
+        this.maxEstimatedRows = maxEstimatedRows;
+        this.minSampleRatio = minSampleRatio;
+    }
+
+    public CheckedQuery check(String sql, String dashboardType, QuerySettings settings) throws KaptureException {
+        if (!enabled) {
+            return CheckedQuery.exact(sql);
+        }
+        QueryEstimate estimate = clickHouseRepository.explainEstimate(sql);
+        long maxRows = getMaxRows(settings);
+        if (estimate == null || estimate.getTotalRows() <= maxRows) {
+            meterRegistry.counter("nlp.query.cost", "result", "accepted").increment();
+            return CheckedQuery.exact(sql);
+        }
+        CheckedQuery sampled = TABLE_DASHBOARD.equalsIgnoreCase(dashboardType) ? sample(sql, estimate, maxRows) : null;
+        if (sampled != null) {
+            log.info("Query estimated at {} rows in {} parts, sampling with ratio {}", estimate.getTotalRows(), estimate.getTotalParts(), sampled.getSampleRatio());
+            meterRegistry.counter("nlp.query.cost", "result", "sampled").increment();
+            return sampled;
+        }
+        log.warn("Query estimated at {} rows in {} parts rejected, limit {}", estimate.getTotalRows(), estimate.getTotalParts(), maxRows);
+        meterRegistry.counter("nlp.query.cost", "result", "rejected").increment();
+        throw new KaptureException(BaseResponse.error(HttpStatus.UNPROCESSABLE_ENTITY,
+                "This query would read about " + estimate.getTotalRows() + " rows, please narrow the date range or add filters!"));
+    }
+
+    // a query over the guardrail's max_rows_to_read would fail in ClickHouse anyway, so never allow more than that
+    private long getMaxRows(QuerySettings settings) {
+        Object maxRowsToRead = settings.getSettings().get("max_rows_to_read");
+        return maxRowsToRead instanceof Number ? Math.min(maxEstimatedRows, ((Number) maxRowsToRead).longValue()) : maxEstimatedRows;
+    }
+
+    private CheckedQuery sample(String sql, QueryEstimate estimate, long maxRows) {
+        Statement statement;
+        try {
+            statement = CCJSqlParserUtil.parse(sql);
+        } catch (JSQLParserException e) {
+            return null;
+        }
+        if (!(statement instanceof Select) || !(((Select) statement).getSelectBody() instanceof PlainSelect)) {
+            return null;
+        }
+        PlainSelect plainSelect = (PlainSelect) ((Select) statement).getSelectBody();
+        if (!(plainSelect.getFromItem() instanceof Table) || isAggregating(plainSelect)) {
+            return null;
+        }
+        // SAMPLE applies to the main table of the query only, joined tables are read in full
+        Table table = (Table) plainSelect.getFromItem();
+        String tableName = StringUtils.strip(table.getName(), "`\"");
+        SchemaCatalog.TableSchema tableSchema = schemaCatalog.getSnapshot().getTable(tableName);
+        if (tableSchema == null || StringUtils.isEmpty(tableSchema.getSamplingKey())) {
+            return null;
+        }
+        long tableRows = estimate.getRowsByTable().getOrDefault(tableName, 0L);
+        long otherRows = estimate.getTotalRows() - tableRows;
+        if (tableRows == 0 || otherRows >= maxRows) {
+            return null;
+        }
+        BigDecimal ratio = BigDecimal.valueOf((double) (maxRows - otherRows) / tableRows).setScale(4, RoundingMode.DOWN);
+        if (ratio.doubleValue() < minSampleRatio) {
+            return null;
+        }
+        plainSelect.setFromItem(new SampledTable(table, ratio.toPlainString()));
+        return new CheckedQuery(statement.toString(), true, ratio.doubleValue());
+    }
+
+    static boolean isAggregating(PlainSelect plainSelect) {
+        if (plainSelect.getGroupBy() != null || plainSelect.getHaving() != null || plainSelect.getDistinct() != null) {
+            return true;
+        }
+        AggregateFinder aggregateFinder = new AggregateFinder();
+        for (SelectItem selectItem : plainSelect.getSelectItems()) {
+            if (selectItem instanceof SelectExpressionItem) {
+                ((SelectExpressionItem) selectItem).getExpression().accept(aggregateFinder);
+            }
+        }
+        return aggregateFinder.found;
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static final class CheckedQuery {
+
+        private final String sql;
+        private final boolean approximate;
+        private final Double sampleRatio;
+
+        static CheckedQuery exact(String sql) {
+            return new CheckedQuery(sql, false, null);
+        }
+    }
+
+    // scalar subqueries are not entered, SAMPLE only applies to the outer query's main table
+    private static final class AggregateFinder extends ExpressionVisitorAdapter {
+
+        private boolean found;
+
+        @Override
+        public void visit(Function function) {
+            if (AGGREGATE_FUNCTION.matcher(function.getName()).matches()) {
+                found = true;
+            }
+            super.visit(function);
+        }
+
+        @Override
+        public void visit(AnalyticExpression expr) {
+            found = true;
+        }
+    }
+
+    /**
+     * Table reference printed with a ClickHouse SAMPLE clause, which JSqlParser has no node for.
+     */
+    private static final class SampledTable extends Table {
+
+        private final String ratio;
+
+        SampledTable(Table table, String ratio) {
+            super(table.getSchemaName(), table.getName());
+            setAlias(table.getAlias());
+            this.ratio = ratio;
+        }
+
+        @Override
+        public String toString() {
+            return super.toString() + " SAMPLE " + ratio;
+        }
+    }
+
+}
@@ -0,0 +1,75 @@
+package com.kapture.nlpdashboardservice.component;
+
+import com.kapture.nlpdashboardservice.config.QueryGuardrailProperties;
+import com.kapture.nlpdashboardservice.dto.QuerySettings;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resolves the ClickHouse resource limits for a generated query from the tenant's tier and the dashboard type,
+ * so a single expensive LLM query cannot saturate the shared cluster.
+ */
+@Component
+@RequiredArgsConstructor(onConstructor = @__(@Autowired))
+public class QueryGuardrails {
+
+    private final QueryGuardrailProperties properties;
+
+    // the row cap on the result is the outer LIMIT from SqlValidator; max_result_rows would also count subquery
+    // results and shard parts, and fail valid queries with large IN (SELECT ...) sets
+    public QuerySettings resolve(int cmId, String dashboardType) {
+        if (!properties.isEnabled()) {
+            return QuerySettings.NONE;
+        }
+        Map<String, Object> settings = new LinkedHashMap<>();
+        apply(settings, properties.getDefaults());
+        if (dashboardType != null) {
+            apply(settings, properties.getDashboardTypes().get(dashboardType.toLowerCase(Locale.ROOT)));
+        }
+        apply(settings, properties.getTiers().get(getTier(cmId)));
+        return new QuerySettings(settings);
+    }
+
+    /**
+     * Same as {@link #resolve(int, String)} with max_execution_time lowered to the time the caller waits for the
+     * query, so ClickHouse stops a query whose stage has already timed out.
+     */
+    public QuerySettings resolve(int cmId, String dashboardType, long timeBudgetMs) {
+        Map<String, Object> settings = new LinkedHashMap<>(resolve(cmId, dashboardType).getSettings());
+        long budgetSeconds = Math.max(1, TimeUnit.MILLISECONDS.toSeconds(timeBudgetMs));
+        Object maxExecutionTime = settings.get("max_execution_time");
+        if (maxExecutionTime == null || ((Number) maxExecutionTime).longValue() > budgetSeconds) {
+            settings.put("max_execution_time", budgetSeconds);
+        }
+        return new QuerySettings(settings);
+    }
+
+    public String getTier(int cmId) {
+        return properties.getTenantTiers().getOrDefault(cmId, properties.getDefaultTier());
+    }
+
+    private static void apply(Map<String, Object> settings, QueryGuardrailProperties.Limits limits) {
+        if (limits == null) {
+            return;
+        }
+        if (limits.getMaxExecutionTimeSeconds() != null) {
+            settings.put("max_execution_time", limits.getMaxExecutionTimeSeconds());
+        }
+        if (limits.getMaxMemoryUsage() != null) {
+            settings.put("max_memory_usage", limits.getMaxMemoryUsage());
+        }
+        if (limits.getMaxRowsToRead() != null) {
+            settings.put("max_rows_to_read", limits.getMaxRowsToRead());
+        }
+        if (limits.getMaxBytesToRead() != null) {
+            settings.put("max_bytes_to_read", limits.getMaxBytesToRead());
+        }
+    }
+
+}
@@ -0,0 +1,92 @@
+package com.kapture.nlpdashboardservice.component;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+
+/**
+ * Single-flight execution of identical dashboard requests. While a computation for a key is running, later
+ * requests with the same key wait on its future instead of starting their own LLM call and ClickHouse query.
+ * The shared computation is only cancelled once every waiting request has been cancelled.
+ */
+@Component
+public class RequestCoalescer {
+
+    private final ConcurrentHashMap<String, Flight<?>> inFlight = new ConcurrentHashMap<>();
+    private final MeterRegistry meterRegistry;
+    private final boolean enabled;
+
+    @Autowired
+    public RequestCoalescer(MeterRegistry meterRegistry,
+                            @Value("${nlp.coalescing.enabled:true}") boolean enabled) {
+        this.meterRegistry = meterRegistry;
+        this.enabled = enabled;
+        meterRegistry.gaugeMapSize("nlp.request.in_flight", List.of(), inFlight);
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> CompletableFuture<T> execute(String key, BooleanSupplier cancelled, Function<BooleanSupplier, CompletableFuture<T>> computation) {
+        if (!enabled) {
+            return computation.apply(cancelled);
+        }
+        Flight<?>[] created = new Flight<?>[1];
+        Flight<T> flight = (Flight<T>) inFlight.compute(key, (k, existing) -> {
+            if (existing != null && existing.join(cancelled)) {
+                return existing;
+            }
+            created[0] = new Flight<>(cancelled);
+            return created[0];
+        });
+        if (flight != created[0]) {
+            meterRegistry.counter("nlp.request.coalesced", "role", "follower").increment();
+            return flight.result;
+        }
+        meterRegistry.counter("nlp.request.coalesced", "role", "leader").increment();
+        computation.apply(flight::isCancelled).whenComplete((result, e) -> {
+            inFlight.remove(key, flight);
+            if (e != null) {
+                flight.result.completeExceptionally(e);
+            } else {
+                flight.result.complete(result);
+            }
+        });
+        return flight.result;
+    }
+
+    private static final class Flight<T> {
+
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+        private final List<BooleanSupplier> waiters = new CopyOnWriteArrayList<>();
+
+        Flight(BooleanSupplier cancelled) {
+            waiters.add(cancelled);
+        }
+
+        // called under the map lock, a flight whose waiters all left may already be winding down
+        boolean join(BooleanSupplier cancelled) {
+            if (isCancelled()) {
+                return false;
+            }
+            waiters.add(cancelled);
+            return true;
+        }
+
+        boolean isCancelled() {
+            for (BooleanSupplier waiter : waiters) {
+                if (!waiter.getAsBoolean()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+}
@@ -0,0 +1,240 @@
+package com.kapture.nlpdashboardservice.component;
+
+import com.kapture.nlpdashboardservice.cache.PromptToSqlTemplateCache;
+import com.kapture.nlpdashboardservice.cache.TableNameToSchemaCache;
+import com.kapture.nlpdashboardservice.dto.TableMetadata;
+import com.kapture.nlpdashboardservice.exception.KaptureException;
+import com.kapture.nlpdashboardservice.repository.clickhouse.ClickHouseRepository;
+import com.kapture.nlpdashboardservice.utility.BaseResponse;
+import com.kapture.nlpdashboardservice.utility.TableNameIndex;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import net.sf.json.JSONObject;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationStartedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * In-memory copy of the ClickHouse schema. It is loaded in full before the application reports
+ * ready, then kept current by polling system.tables and reloading only tables whose
+ * metadata_modification_time moved. Clearing the schema cache on any node reloads it on every node.
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor(onConstructor = @__(@Autowired))
+public class SchemaCatalog {
+
+    private final ClickHouseRepository clickHouseRepository;
+    private final TableNameToSchemaCache tableNameToSchemaCache;
+    private final PromptToSqlTemplateCache promptToSqlTemplateCache;
+    private final DashboardExecutors dashboardExecutors;
+
+    private final AtomicReference<SchemaSnapshot> snapshot = new AtomicReference<>(SchemaSnapshot.EMPTY);
+    private final AtomicBoolean requestLoading = new AtomicBoolean();
+    private volatile long lastFailedLoadMillis;
+
+    @Value("${nlp.schema-catalog.retry-backoff-ms:30000}")
+    private long retryBackoffMs;
+
+    public SchemaSnapshot getSnapshot() {
+        return snapshot.get();
+    }
+
+    // ApplicationStartedEvent fires before the readiness probe flips to ACCEPTING_TRAFFIC
+    @EventListener(ApplicationStartedEvent.class)
+    public void loadOnStartup() {
+        reload();
+        if (snapshot.get().isEmpty()) {
+            log.warn("Schema catalog is empty after startup, it will be loaded by the next poll or first request");
+        }
+    }
+
+    @PostConstruct
+    public void subscribeToInvalidation() {
+        try {
+            tableNameToSchemaCache.addInvalidationListener(tableName -> {
+                if (tableName == null || tableName.isEmpty()) {
+                    reloadAsync();
+                }
+            });
+        } catch (Exception e) {
+            log.error("Error in subscribeSchemaCatalog", e);
+        }
+    }
+
+    // off the redis listener thread; a full schema executor reloads in place rather than skipping the reload
+    private void reloadAsync() {
+        try {
+            dashboardExecutors.getSchemaExecutor().execute(this::reload);
+        } catch (RejectedExecutionException e) {
+            reload();
+        }
+    }
+
+    /**
+     * Returns the snapshot, loading it first for requests that arrive while ClickHouse was unreachable at startup.
+     * One request at a time loads, and none within the backoff window after a failed load; the others fail fast
+     * with 503 instead of queueing behind loads that wait out the metadata query timeout. The poll keeps retrying.
+     */
+    public SchemaSnapshot ensureLoaded() throws KaptureException {
+        SchemaSnapshot current = snapshot.get();
+        if (!current.isEmpty()) {
+            return current;
+        }
+        if (System.currentTimeMillis() - lastFailedLoadMillis >= retryBackoffMs && requestLoading.compareAndSet(false, true)) {
+            try {
+                reload();
+            } finally {
+                requestLoading.set(false);
+            }
+        }
+        current = snapshot.get();
+        if (current.isEmpty()) {
+            throw new KaptureException(BaseResponse.error(HttpStatus.SERVICE_UNAVAILABLE, "Database schema is not available, please retry!"));
+        }
+        return current;
+    }
+
+    public synchronized void reload() {
+        try {
+            Map<String, TableMetadata> tables = clickHouseRepository.findTableMetadata();
+            if (tables.isEmpty()) {
+                lastFailedLoadMillis = System.currentTimeMillis();
+                return;
+            }
+            Map<String, JSONObject> schemas = clickHouseRepository.findDBTableSchemas(tables.keySet());
+            Map<String, TableSchema> tableSchemas = new HashMap<>();
+            tables.forEach((name, metadata) -> tableSchemas.put(name, TableSchema.of(metadata, schemas.get(name))));
+            SchemaSnapshot loaded = new SchemaSnapshot(snapshot.get().getVersion() + 1, tableSchemas);
+            snapshot.set(loaded);
+            lastFailedLoadMillis = 0;
+            log.info("Loaded schema catalog version {} with {} tables", loaded.getVersion(), tableSchemas.size());
+        } catch (Exception e) {
+            lastFailedLoadMillis = System.currentTimeMillis();
+            log.error("Error in reloadSchemaCatalog" + e);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${nlp.schema-catalog.poll-ms:60000}", initialDelayString = "${nlp.schema-catalog.poll-ms:60000}")
+    public synchronized void pollForChanges() {
+        SchemaSnapshot current = snapshot.get();
+        if (current.isEmpty()) {
+            reload();
+            return;
+        }
+        try {
+            Map<String, TableMetadata> tables = clickHouseRepository.findTableMetadata();
+            if (tables.isEmpty()) {
+                return;
+            }
+            List<String> changedTables = new ArrayList<>();
+            for (TableMetadata metadata : tables.values()) {
+                TableSchema known = current.getTable(metadata.getName());
+                if (known == null || known.getModificationTime() != metadata.getModificationTime()
+                        || !Objects.equals(known.getSamplingKey(), metadata.getSamplingKey())) {
+                    changedTables.add(metadata.getName());
+                }
+            }
+            List<String> droppedTables = new ArrayList<>();
+            for (String tableName : current.getTables().keySet()) {
+                if (!tables.containsKey(tableName)) {
+                    droppedTables.add(tableName);
+                }
+            }
+            if (changedTables.isEmpty() && droppedTables.isEmpty()) {
+                return;
+            }
+            Map<String, JSONObject> schemas = clickHouseRepository.findDBTableSchemas(changedTables);
+            Map<String, TableSchema> tableSchemas = new HashMap<>(current.getTables());
+            droppedTables.forEach(tableSchemas::remove);
+            for (String tableName : changedTables) {
+                tableSchemas.put(tableName, TableSchema.of(tables.get(tableName), schemas.get(tableName)));
+            }
+            snapshot.set(new SchemaSnapshot(current.getVersion() + 1, tableSchemas));
+
+            List<String> staleTables = new ArrayList<>(changedTables);
+            staleTables.addAll(droppedTables);
+            tableNameToSchemaCache.evict(staleTables);
+            promptToSqlTemplateCache.evictTables(staleTables);
+            log.info("Schema catalog version {}: reloaded {}, dropped {}", current.getVersion() + 1, changedTables, droppedTables);
+        } catch (Exception e) {
+            log.error("Error in pollSchemaCatalog" + e);
+        }
+    }
+
+    @Getter
+    public static final class TableSchema {
+
+        private final String name;
+        private final long modificationTime;
+        private final String samplingKey;
+        // column name -> "Type:..., Remarks:...", in table order
+        private final Map<String, String> columns;
+        private final String schemaText;
+
+        private TableSchema(String name, long modificationTime, String samplingKey, Map<String, String> columns, String schemaText) {
+            this.name = name;
+            this.modificationTime = modificationTime;
+            this.samplingKey = samplingKey;
+            this.columns = columns;
+            this.schemaText = schemaText;
+        }
+
+        static TableSchema of(TableMetadata metadata, JSONObject schema) {
+            Map<String, String> columns = new LinkedHashMap<>();
+            if (schema != null) {
+                for (Object column : schema.keySet()) {
+                    columns.put(String.valueOf(column), schema.getString(String.valueOf(column)));
+                }
+            }
+            return new TableSchema(metadata.getName(), metadata.getModificationTime(), metadata.getSamplingKey(),
+                    Collections.unmodifiableMap(columns), schema == null ? null : schema.toString());
+        }
+
+        public boolean hasColumns() {
+            return !columns.isEmpty();
+        }
+    }
+
+    @Getter
+    public static final class SchemaSnapshot {
+
+        static final SchemaSnapshot EMPTY = new SchemaSnapshot(0, Map.of());
+
+        private final long version;
+        private final Map<String, TableSchema> tables;
+        private final TableNameIndex tableNameIndex;
+
+        SchemaSnapshot(long version, Map<String, TableSchema> tables) {
+            this.version = version;
+            this.tables = Collections.unmodifiableMap(tables);
+            this.tableNameIndex = TableNameIndex.build(tables.keySet());
+        }
+
+        public boolean isEmpty() {
+            return tables.isEmpty();
+        }
+
+        public TableSchema getTable(String tableName) {
+            return tables.get(tableName);
+        }
+    }
+
+}
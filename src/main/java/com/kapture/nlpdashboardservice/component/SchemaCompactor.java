@@ -0,0 +1,234 @@
+package com.kapture.nlpdashboardservice.component;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import net.sf.json.JSONObject;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/**
+ * Shrinks the schema sent to the LLM. Columns are ranked by how well their name and remarks match
+ * the prompt and by how often they appeared in SQL that ran successfully; the best ones are kept
+ * within a per-table limit and a total token budget, and printed one table per line as
+ * {@code table(column Type "remarks", ...)}.
+ */
+@Component
+@Slf4j
+public class SchemaCompactor {
+
+    private static final Pattern NON_WORD = Pattern.compile("[^a-z0-9]+");
+    private static final String TYPE_PREFIX = "Type:";
+    private static final String REMARKS_SEPARATOR = ", Remarks:";
+    private static final int MAX_REMARKS_LENGTH = 60;
+    // rough GPT tokenizer ratio for identifiers and short english text
+    private static final int CHARS_PER_TOKEN = 4;
+    private static final String COMPACT_FORMAT = "one table per line as tableName(columnName columnDataType \"remarks\", ...)";
+    private static final String JSON_FORMAT = "tableName to columnName to columnDataType mapping";
+
+    private final boolean enabled;
+    private final int maxColumnsPerTable;
+    private final int tokenBudget;
+    private final Cache<String, LongAdder> recentColumnUsage;
+    private final DistributionSummary tokensBefore;
+    private final DistributionSummary tokensAfter;
+
+    @Autowired
+    public SchemaCompactor(@Value("${nlp.schema-compaction.enabled:true}") boolean enabled,
+                           @Value("${nlp.schema-compaction.max-columns-per-table:25}") int maxColumnsPerTable,
+                           @Value("${nlp.schema-compaction.token-budget:1500}") int tokenBudget,
+                           @Value("${nlp.schema-compaction.usage-max-size:10000}") long usageMaxSize,
+                           @Value("${nlp.schema-compaction.usage-ttl-hours:168}") long usageTtlHours,
+                           MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.maxColumnsPerTable = maxColumnsPerTable;
+        this.tokenBudget = tokenBudget;
+        this.recentColumnUsage = Caffeine.newBuilder()
+                .maximumSize(usageMaxSize)
+                .expireAfterAccess(usageTtlHours, TimeUnit.HOURS)
+                .build();
+        this.tokensBefore = DistributionSummary.builder("nlp.prompt.schema.tokens").tag("stage", "before").register(meterRegistry);
+        this.tokensAfter = DistributionSummary.builder("nlp.prompt.schema.tokens").tag("stage", "after").register(meterRegistry);
+    }
+
+    public CompactedSchema compact(String prompt, JSONObject dbSchema, boolean hasDateRange) {
+        String fullSchema = dbSchema.toString();
+        tokensBefore.record(estimateTokens(fullSchema));
+        if (!enabled) {
+            tokensAfter.record(estimateTokens(fullSchema));
+            return new CompactedSchema(JSON_FORMAT, fullSchema);
+        }
+        Set<String> promptWords = words(prompt);
+
+        List<ScoredColumn> candidates = new ArrayList<>();
+        for (Object tableKey : dbSchema.keySet()) {
+            String table = String.valueOf(tableKey);
+            JSONObject tableSchema = dbSchema.getJSONObject(table);
+            List<ScoredColumn> tableColumns = new ArrayList<>();
+            int position = 0;
+            for (Object columnKey : tableSchema.keySet()) {
+                String column = String.valueOf(columnKey);
+                ScoredColumn scored = new ScoredColumn(table, column, position++, tableSchema.getString(column));
+                scored.score = score(scored, promptWords, hasDateRange);
+                tableColumns.add(scored);
+            }
+            tableColumns.sort(Comparator.comparingDouble((ScoredColumn c) -> -c.score).thenComparingInt(c -> c.position));
+            candidates.addAll(tableColumns.subList(0, Math.min(maxColumnsPerTable, tableColumns.size())));
+        }
+        candidates.sort(Comparator.comparingDouble((ScoredColumn c) -> -c.score).thenComparingInt(c -> c.position));
+
+        // the tenant column is always kept since every query has to filter on it
+        Map<String, List<ScoredColumn>> kept = new LinkedHashMap<>();
+        for (Object tableKey : dbSchema.keySet()) {
+            kept.put(String.valueOf(tableKey), new ArrayList<>());
+        }
+        int tokens = 0;
+        for (ScoredColumn candidate : candidates) {
+            int cost = estimateTokens(candidate.render());
+            if (tokens + cost > tokenBudget && !candidate.isTenantColumn()) {
+                continue;
+            }
+            kept.get(candidate.table).add(candidate);
+            tokens += cost;
+        }
+
+        StringBuilder compact = new StringBuilder();
+        for (Map.Entry<String, List<ScoredColumn>> entry : kept.entrySet()) {
+            List<ScoredColumn> columns = entry.getValue();
+            columns.sort(Comparator.comparingInt(c -> c.position));
+            compact.append('\n').append(entry.getKey()).append('(');
+            for (int i = 0; i < columns.size(); i++) {
+                if (i > 0) {
+                    compact.append(", ");
+                }
+                compact.append(columns.get(i).render());
+            }
+            compact.append(')');
+        }
+        String result = compact.toString();
+        tokensAfter.record(estimateTokens(result));
+        return new CompactedSchema(COMPACT_FORMAT, result);
+    }
+
+    /**
+     * Remembers the columns a query that ran successfully read, as found by {@link SqlValidator#findColumns},
+     * so the same columns of the same tables rank higher next time.
+     */
+    public void recordSuccessfulSql(Map<String, Set<String>> columnsByTable) {
+        if (!enabled) {
+            return;
+        }
+        for (Map.Entry<String, Set<String>> entry : columnsByTable.entrySet()) {
+            for (String column : entry.getValue()) {
+                recentColumnUsage.get(usageKey(entry.getKey(), column), key -> new LongAdder()).increment();
+            }
+        }
+    }
+
+    private static String usageKey(String table, String column) {
+        return table.toLowerCase(Locale.ROOT) + '.' + column.toLowerCase(Locale.ROOT);
+    }
+
+    private double score(ScoredColumn column, Set<String> promptWords, boolean hasDateRange) {
+        if (column.isTenantColumn()) {
+            return Double.MAX_VALUE;
+        }
+        double score = 0;
+        String name = column.column.toLowerCase(Locale.ROOT);
+        if (promptWords.contains(name)) {
+            score += 5;
+        }
+        for (String part : NON_WORD.split(name)) {
+            if (part.length() > 1 && (promptWords.contains(part) || promptWords.contains(part + "s"))) {
+                score += 3;
+            }
+        }
+        if (column.remarks != null) {
+            for (String word : words(column.remarks)) {
+                if (promptWords.contains(word)) {
+                    score += 1;
+                }
+            }
+        }
+        LongAdder usage = recentColumnUsage.getIfPresent(usageKey(column.table, name));
+        if (usage != null) {
+            score += Math.min(4, 1 + Math.log(usage.sum()));
+        }
+        if (hasDateRange && column.type.startsWith("Date")) {
+            score += 2;
+        }
+        return score;
+    }
+
+    private static Set<String> words(String text) {
+        Set<String> words = new HashSet<>();
+        for (String word : NON_WORD.split(text.toLowerCase(Locale.ROOT))) {
+            if (word.length() > 2) {
+                words.add(word);
+            }
+        }
+        return words;
+    }
+
+    private static int estimateTokens(String text) {
+        return (text.length() + CHARS_PER_TOKEN - 1) / CHARS_PER_TOKEN;
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static final class CompactedSchema {
+
+        // how the text lays the schema out, told to the LLM along with it
+        private final String format;
+        private final String text;
+    }
+
+    private static final class ScoredColumn {
+
+        private final String table;
+        private final String column;
+        private final int position;
+        private final String type;
+        private final String remarks;
+        private double score;
+
+        ScoredColumn(String table, String column, int position, String description) {
+            this.table = table;
+            this.column = column;
+            this.position = position;
+            // description is "Type:X" or "Type:X, Remarks:Y" as built by ClickHouseRepository
+            String text = description.startsWith(TYPE_PREFIX) ? description.substring(TYPE_PREFIX.length()) : description;
+            int remarksAt = text.indexOf(REMARKS_SEPARATOR);
+            this.type = (remarksAt < 0 ? text : text.substring(0, remarksAt)).trim();
+            String remarks = remarksAt < 0 ? null : text.substring(remarksAt + REMARKS_SEPARATOR.length()).trim();
+            this.remarks = remarks == null || remarks.isEmpty() ? null
+                    : remarks.length() > MAX_REMARKS_LENGTH ? remarks.substring(0, MAX_REMARKS_LENGTH) : remarks;
+        }
+
+        boolean isTenantColumn() {
+            return "cm_id".equalsIgnoreCase(column);
+        }
+
+        String render() {
+            return remarks == null ? column + " " + type : column + " " + type + " \"" + remarks.replace('"', '\'') + "\"";
+        }
+    }
+
+}
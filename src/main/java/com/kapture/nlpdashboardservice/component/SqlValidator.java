@@ -0,0 +1,515 @@
+package com.kapture.nlpdashboardservice.component;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.kapture.nlpdashboardservice.exception.KaptureException;
+import com.kapture.nlpdashboardservice.utility.BaseResponse;
+import com.kapture.nlpdashboardservice.utility.ConversionUtil;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import net.sf.jsqlparser.JSQLParserException;
+import net.sf.jsqlparser.expression.Expression;
+import net.sf.jsqlparser.expression.ExpressionVisitorAdapter;
+import net.sf.jsqlparser.expression.Function;
+import net.sf.jsqlparser.expression.LongValue;
+import net.sf.jsqlparser.expression.Parenthesis;
+import net.sf.jsqlparser.expression.operators.conditional.AndExpression;
+import net.sf.jsqlparser.expression.operators.relational.EqualsTo;
+import net.sf.jsqlparser.parser.CCJSqlParserUtil;
+import net.sf.jsqlparser.schema.Column;
+import net.sf.jsqlparser.schema.Table;
+import net.sf.jsqlparser.statement.Statement;
+import net.sf.jsqlparser.statement.Statements;
+import net.sf.jsqlparser.statement.select.FromItem;
+import net.sf.jsqlparser.statement.select.GroupByElement;
+import net.sf.jsqlparser.statement.select.Join;
+import net.sf.jsqlparser.statement.select.LateralSubSelect;
+import net.sf.jsqlparser.statement.select.Limit;
+import net.sf.jsqlparser.statement.select.Offset;
+import net.sf.jsqlparser.statement.select.OrderByElement;
+import net.sf.jsqlparser.statement.select.ParenthesisFromItem;
+import net.sf.jsqlparser.statement.select.PlainSelect;
+import net.sf.jsqlparser.statement.select.Select;
+import net.sf.jsqlparser.statement.select.SelectBody;
+import net.sf.jsqlparser.statement.select.SelectExpressionItem;
+import net.sf.jsqlparser.statement.select.SelectItem;
+import net.sf.jsqlparser.statement.select.SetOperationList;
+import net.sf.jsqlparser.statement.select.SubSelect;
+import net.sf.jsqlparser.statement.select.TableFunction;
+import net.sf.jsqlparser.statement.select.WithItem;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Turns an LLM reply into SQL that is safe to run for one tenant: strips markdown fences, accepts a single
+ * SELECT only, adds a cm_id predicate for every table it reads (subqueries, joins and CTE bodies included)
+ * and adds or clamps the LIMIT. Results are memoized by a hash of the input, so a bound SQL template is
+ * parsed once. SQL the parser cannot read is rejected, since its tables cannot be scoped to the tenant.
+ */
+@Component
+@Slf4j
+public class SqlValidator {
+
+    private static final String TENANT_COLUMN = "cm_id";
+    private static final Pattern CODE_FENCE = Pattern.compile("```[a-zA-Z]*");
+
+    private final Cache<String, String> validatedSql;
+    private final MeterRegistry meterRegistry;
+
+    @Autowired
+    public SqlValidator(@Value("${nlp.sql-validator.cache-max-size:5000}") long cacheMaxSize,
+                        MeterRegistry meterRegistry) {
+        this.validatedSql = Caffeine.newBuilder()
+                .maximumSize(cacheMaxSize)
+                .build();
+        this.meterRegistry = meterRegistry;
+    }
+
+    public String validate(int cmId, String aiReply, int maxRows) throws KaptureException {
+        String sql = stripMarkdown(aiReply);
+        String key = ConversionUtil.sha256Hex(cmId + "|" + maxRows + "|" + sql);
+        String cached = validatedSql.getIfPresent(key);
+        if (cached != null) {
+            meterRegistry.counter("nlp.sql.validation", "result", "cached").increment();
+            return cached;
+        }
+        Statement statement;
+        try {
+            Statements statements = CCJSqlParserUtil.parseStatements(sql);
+            if (statements.getStatements().size() != 1) {
+                meterRegistry.counter("nlp.sql.validation", "result", "rejected").increment();
+                throw new KaptureException(BaseResponse.error(HttpStatus.UNPROCESSABLE_ENTITY, "Only a single select statement is supported!"));
+            }
+            statement = statements.getStatements().get(0);
+        } catch (JSQLParserException e) {
+            // ClickHouse specific syntax (LIMIT BY, ARRAY JOIN, ...) the parser does not know cannot be scoped either
+            log.warn("Could not parse AI generated SQL: {}", e.getMessage());
+            meterRegistry.counter("nlp.sql.validation", "result", "rejected").increment();
+            throw new KaptureException(BaseResponse.error(HttpStatus.UNPROCESSABLE_ENTITY, "Could not process the generated SQL!"));
+        }
+        if (!(statement instanceof Select)) {
+            meterRegistry.counter("nlp.sql.validation", "result", "rejected").increment();
+            throw new KaptureException(BaseResponse.error(HttpStatus.UNPROCESSABLE_ENTITY, "Only select operation supported!"));
+        }
+        Select select = (Select) statement;
+        try {
+            new TenantScoper((long) cmId, select).scope();
+        } catch (IllegalStateException e) {
+            meterRegistry.counter("nlp.sql.validation", "result", "rejected").increment();
+            throw new KaptureException(BaseResponse.error(HttpStatus.UNPROCESSABLE_ENTITY, "Could not process the generated SQL!"));
+        }
+        applyLimit(select.getSelectBody(), maxRows);
+        String finalSql = select.toString();
+        validatedSql.put(key, finalSql);
+        meterRegistry.counter("nlp.sql.validation", "result", "parsed").increment();
+        return finalSql;
+    }
+
+    /**
+     * Columns the SQL reads, by lower case table name. An unqualified column is only attributed when its select
+     * reads a single table; aliases of the select's own items are not columns. Empty when the SQL cannot be parsed.
+     */
+    public Map<String, Set<String>> findColumns(String sql) {
+        try {
+            Statement statement = CCJSqlParserUtil.parse(sql);
+            if (!(statement instanceof Select)) {
+                return Collections.emptyMap();
+            }
+            TenantScoper scoper = new TenantScoper(null, (Select) statement);
+            scoper.scope();
+            return scoper.columnsByTable;
+        } catch (JSQLParserException | IllegalStateException e) {
+            log.debug("Could not read columns of SQL: {}", e.getMessage());
+            return Collections.emptyMap();
+        }
+    }
+
+    /**
+     * Rewrites validated SQL to return rows [offset, offset + limit) of its result, never past its own LIMIT
+     * and OFFSET. Every selected column is appended to the ORDER BY, so each page query sees the rows in the
+     * same order and pages neither overlap nor skip rows. Returns null when the SQL can not be given such an
+     * order (SELECT *, set operations, SQL the parser cannot read); the caller then pages one whole result.
+     */
+    public String paginate(String sql, long offset, int limit) {
+        try {
+            Statement statement = CCJSqlParserUtil.parse(sql);
+            if (!(statement instanceof Select) || !(((Select) statement).getSelectBody() instanceof PlainSelect)) {
+                return null;
+            }
+            PlainSelect plainSelect = (PlainSelect) ((Select) statement).getSelectBody();
+            if (!addTieBreakers(plainSelect)) {
+                return null;
+            }
+            long baseOffset = 0;
+            long rowCount = limit;
+            Limit current = plainSelect.getLimit();
+            if (current != null) {
+                Long currentRowCount = longValue(current.getRowCount());
+                Long currentOffset = longValue(current.getOffset());
+                if ((current.getRowCount() != null && currentRowCount == null) || (current.getOffset() != null && currentOffset == null)) {
+                    return null;
+                }
+                baseOffset = currentOffset == null ? 0 : currentOffset;
+                if (currentRowCount != null) {
+                    rowCount = Math.max(0, Math.min(limit, currentRowCount - offset));
+                }
+            }
+            Offset currentOffsetClause = plainSelect.getOffset();
+            if (currentOffsetClause != null) {
+                Long currentOffset = longValue(currentOffsetClause.getOffset());
+                if (currentOffset == null) {
+                    return null;
+                }
+                baseOffset += currentOffset;
+                plainSelect.setOffset(null);
+            }
+            Limit page = new Limit();
+            page.setRowCount(new LongValue(rowCount));
+            page.setOffset(new LongValue(baseOffset + offset));
+            plainSelect.setLimit(page);
+            return statement.toString();
+        } catch (JSQLParserException e) {
+            log.debug("Not paginating unparsed SQL: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    // appends the selected columns the ORDER BY does not have yet, false when they can not be named (SELECT *)
+    private static boolean addTieBreakers(PlainSelect plainSelect) {
+        List<OrderByElement> orderBy = new ArrayList<>();
+        Set<String> ordered = new HashSet<>();
+        if (plainSelect.getOrderByElements() != null) {
+            for (OrderByElement element : plainSelect.getOrderByElements()) {
+                orderBy.add(element);
+                ordered.add(element.getExpression().toString());
+            }
+        }
+        for (SelectItem item : plainSelect.getSelectItems()) {
+            if (!(item instanceof SelectExpressionItem)) {
+                return false;
+            }
+            SelectExpressionItem expressionItem = (SelectExpressionItem) item;
+            Expression key = expressionItem.getAlias() != null
+                    ? new Column(expressionItem.getAlias().getName())
+                    : expressionItem.getExpression();
+            if (ordered.add(key.toString())) {
+                OrderByElement element = new OrderByElement();
+                element.setExpression(key);
+                orderBy.add(element);
+            }
+        }
+        plainSelect.setOrderByElements(orderBy);
+        return true;
+    }
+
+    private static Long longValue(Expression expression) {
+        return expression instanceof LongValue ? ((LongValue) expression).getValue() : null;
+    }
+
+    static String stripMarkdown(String aiReply) {
+        String sql = CODE_FENCE.matcher(aiReply).replaceAll(" ").trim();
+        while (sql.endsWith(";")) {
+            sql = sql.substring(0, sql.length() - 1).trim();
+        }
+        return sql;
+    }
+
+    private static void applyLimit(SelectBody body, int maxRows) {
+        Limit limit;
+        if (body instanceof PlainSelect) {
+            limit = ((PlainSelect) body).getLimit();
+        } else if (body instanceof SetOperationList) {
+            limit = ((SetOperationList) body).getLimit();
+        } else {
+            return;
+        }
+        if (limit != null && limit.getRowCount() instanceof LongValue
+                && ((LongValue) limit.getRowCount()).getValue() <= maxRows) {
+            return;
+        }
+        if (limit == null) {
+            limit = new Limit();
+        }
+        limit.setRowCount(new LongValue(maxRows));
+        if (body instanceof PlainSelect) {
+            ((PlainSelect) body).setLimit(limit);
+        } else {
+            ((SetOperationList) body).setLimit(limit);
+        }
+    }
+
+    /**
+     * Walks every select of the statement once. Each physical table gets "table.cm_id = ?": in the ON
+     * clause for joined tables, so outer joins keep their meaning, and in WHERE otherwise. References to
+     * CTE names are skipped since the CTE body is scoped itself. Every expression position is visited for
+     * nested selects, and table functions (remote, url, s3, ...) are rejected since they read data that no
+     * tenant predicate can restrict. Without a cmId nothing is added and the scoper only collects the columns
+     * each select reads.
+     */
+    private static final class TenantScoper extends ExpressionVisitorAdapter {
+
+        private static final Set<String> TABLE_FUNCTIONS = Set.of("remote", "remotesecure", "cluster", "clusterallreplicas",
+                "url", "urlcluster", "file", "filecluster", "s3", "s3cluster", "gcs", "hdfs", "hdfscluster", "azureblobstorage",
+                "input", "mysql", "postgresql", "mongodb", "redis", "sqlite", "jdbc", "odbc", "executable", "dictionary",
+                "merge", "view", "viewifpermitted", "iceberg", "deltalake", "hudi", "format", "generaterandom");
+
+        private final Long cmId;
+        private final Select select;
+        private final Set<String> cteNames = new HashSet<>();
+        // columns referenced by each select being walked, resolved against its tables once it is done
+        private final Deque<List<Column>> columnScopes = new ArrayDeque<>();
+        private final Map<String, Set<String>> columnsByTable = new HashMap<>();
+
+        TenantScoper(Long cmId, Select select) {
+            this.cmId = cmId;
+            this.select = select;
+        }
+
+        void scope() {
+            collectCteNames(select.getWithItemsList());
+            scopeWithItems(select.getWithItemsList());
+            scopeBody(select.getSelectBody());
+        }
+
+        private void collectCteNames(List<WithItem> withItems) {
+            if (withItems != null) {
+                for (WithItem withItem : withItems) {
+                    cteNames.add(withItem.getName().toLowerCase(Locale.ROOT));
+                }
+            }
+        }
+
+        private void scopeWithItems(List<WithItem> withItems) {
+            if (withItems != null) {
+                for (WithItem withItem : withItems) {
+                    if (withItem.getSubSelect() == null) {
+                        throw new IllegalStateException("Unsupported with item " + withItem);
+                    }
+                    scopeSubSelect(withItem.getSubSelect());
+                }
+            }
+        }
+
+        private void scopeSubSelect(SubSelect subSelect) {
+            if (subSelect == null) {
+                return;
+            }
+            collectCteNames(subSelect.getWithItemsList());
+            scopeWithItems(subSelect.getWithItemsList());
+            scopeBody(subSelect.getSelectBody());
+        }
+
+        private void scopeBody(SelectBody body) {
+            if (body instanceof PlainSelect) {
+                scopePlainSelect((PlainSelect) body);
+            } else if (body instanceof SetOperationList) {
+                SetOperationList setOperationList = (SetOperationList) body;
+                for (SelectBody part : setOperationList.getSelects()) {
+                    scopeBody(part);
+                }
+                visitOrderBy(setOperationList.getOrderByElements());
+                visitLimit(setOperationList.getLimit());
+            } else if (body instanceof WithItem) {
+                scopeSubSelect(((WithItem) body).getSubSelect());
+            } else {
+                throw new IllegalStateException("Unsupported select " + body);
+            }
+        }
+
+        private void scopePlainSelect(PlainSelect plainSelect) {
+            columnScopes.push(new ArrayList<>());
+            // nested selects inside expressions first, before our own predicates are added
+            visitSelectItems(plainSelect.getSelectItems());
+            if (plainSelect.getDistinct() != null) {
+                visitSelectItems(plainSelect.getDistinct().getOnSelectItems());
+            }
+            visitExpression(plainSelect.getWhere());
+            visitGroupBy(plainSelect.getGroupBy());
+            visitExpression(plainSelect.getHaving());
+            visitOrderBy(plainSelect.getOrderByElements());
+            visitLimit(plainSelect.getLimit());
+
+            List<Table> tables = new ArrayList<>();
+            int fromItems = plainSelect.getFromItem() == null ? 0 : 1;
+            Table fromTable = scopeFromItem(plainSelect.getFromItem());
+            if (fromTable != null) {
+                tables.add(fromTable);
+                if (cmId != null) {
+                    plainSelect.setWhere(and(tenantPredicate(fromTable), plainSelect.getWhere()));
+                }
+            }
+            if (plainSelect.getJoins() != null) {
+                for (Join join : plainSelect.getJoins()) {
+                    fromItems++;
+                    visitExpression(join.getOnExpression());
+                    Table joinedTable = scopeFromItem(join.getRightItem());
+                    if (joinedTable == null) {
+                        continue;
+                    }
+                    tables.add(joinedTable);
+                    if (cmId == null) {
+                        continue;
+                    }
+                    if (join.getOnExpression() != null) {
+                        join.setOnExpression(and(tenantPredicate(joinedTable), join.getOnExpression()));
+                    } else {
+                        plainSelect.setWhere(and(tenantPredicate(joinedTable), plainSelect.getWhere()));
+                    }
+                }
+            }
+            recordColumns(plainSelect, tables, fromItems == 1, columnScopes.pop());
+        }
+
+        private void recordColumns(PlainSelect plainSelect, List<Table> tables, boolean singleSource, List<Column> columns) {
+            Set<String> aliases = new HashSet<>();
+            for (SelectItem item : plainSelect.getSelectItems()) {
+                if (item instanceof SelectExpressionItem && ((SelectExpressionItem) item).getAlias() != null) {
+                    aliases.add(identifier(((SelectExpressionItem) item).getAlias().getName()));
+                }
+            }
+            for (Column column : columns) {
+                String name = identifier(column.getColumnName());
+                Table qualifier = column.getTable();
+                Table owner;
+                if (qualifier != null && qualifier.getName() != null) {
+                    owner = findTable(tables, identifier(qualifier.getName()));
+                } else {
+                    owner = singleSource && tables.size() == 1 && !aliases.contains(name) ? tables.get(0) : null;
+                }
+                if (owner != null) {
+                    columnsByTable.computeIfAbsent(identifier(owner.getName()), key -> new HashSet<>()).add(name);
+                }
+            }
+        }
+
+        private static Table findTable(List<Table> tables, String qualifier) {
+            for (Table table : tables) {
+                if ((table.getAlias() != null && identifier(table.getAlias().getName()).equals(qualifier))
+                        || identifier(table.getName()).equals(qualifier)) {
+                    return table;
+                }
+            }
+            return null;
+        }
+
+        private static String identifier(String name) {
+            return StringUtils.strip(name, "`\"").toLowerCase(Locale.ROOT);
+        }
+
+        private void visitSelectItems(List<SelectItem> selectItems) {
+            if (selectItems != null) {
+                for (SelectItem item : selectItems) {
+                    if (item instanceof SelectExpressionItem) {
+                        ((SelectExpressionItem) item).getExpression().accept(this);
+                    }
+                }
+            }
+        }
+
+        private void visitGroupBy(GroupByElement groupBy) {
+            if (groupBy == null) {
+                return;
+            }
+            if (groupBy.getGroupByExpressionList() != null && groupBy.getGroupByExpressionList().getExpressions() != null) {
+                for (Expression expression : groupBy.getGroupByExpressionList().getExpressions()) {
+                    expression.accept(this);
+                }
+            }
+            if (groupBy.getGroupingSets() != null && !groupBy.getGroupingSets().isEmpty()) {
+                throw new IllegalStateException("Unsupported grouping sets " + groupBy);
+            }
+        }
+
+        private void visitOrderBy(List<OrderByElement> orderByElements) {
+            if (orderByElements != null) {
+                for (OrderByElement orderByElement : orderByElements) {
+                    orderByElement.getExpression().accept(this);
+                }
+            }
+        }
+
+        private void visitLimit(Limit limit) {
+            if (limit != null) {
+                visitExpression(limit.getRowCount());
+                visitExpression(limit.getOffset());
+            }
+        }
+
+        private void visitExpression(Expression expression) {
+            if (expression != null) {
+                expression.accept(this);
+            }
+        }
+
+        /**
+         * Scopes nested selects of the from item and returns it when it is a table that still needs a predicate.
+         */
+        private Table scopeFromItem(FromItem fromItem) {
+            if (fromItem == null) {
+                return null;
+            }
+            if (fromItem instanceof Table) {
+                Table table = (Table) fromItem;
+                return cteNames.contains(table.getName().toLowerCase(Locale.ROOT)) ? null : table;
+            }
+            if (fromItem instanceof SubSelect) {
+                scopeSubSelect((SubSelect) fromItem);
+            } else if (fromItem instanceof LateralSubSelect) {
+                scopeSubSelect(((LateralSubSelect) fromItem).getSubSelect());
+            } else if (fromItem instanceof ParenthesisFromItem) {
+                return scopeFromItem(((ParenthesisFromItem) fromItem).getFromItem());
+            } else if (fromItem instanceof TableFunction) {
+                throw new IllegalStateException("Unsupported table function " + fromItem);
+            } else {
+                // nested joins have no clause of their own to carry the predicate, anything else is not a table we know
+                throw new IllegalStateException("Unsupported from item " + fromItem);
+            }
+            return null;
+        }
+
+        @Override
+        public void visit(SubSelect subSelect) {
+            scopeSubSelect(subSelect);
+        }
+
+        @Override
+        public void visit(Column column) {
+            List<Column> columns = columnScopes.peek();
+            if (columns != null) {
+                columns.add(column);
+            }
+        }
+
+        @Override
+        public void visit(Function function) {
+            if (TABLE_FUNCTIONS.contains(function.getName().toLowerCase(Locale.ROOT))) {
+                throw new IllegalStateException("Unsupported table function " + function);
+            }
+            super.visit(function);
+        }
+
+        private EqualsTo tenantPredicate(Table table) {
+            return new EqualsTo(new Column(table, TENANT_COLUMN), new LongValue(cmId));
+        }
+
+        private static Expression and(Expression predicate, Expression existing) {
+            return existing == null ? predicate : new AndExpression(predicate, new Parenthesis(existing));
+        }
+    }
+
+}
@@ -0,0 +1,263 @@
+package com.kapture.nlpdashboardservice.component;
+
+import com.kapture.nlpdashboardservice.config.TenantAdmissionProperties;
+import com.kapture.nlpdashboardservice.exception.KaptureException;
+import com.kapture.nlpdashboardservice.utility.BaseResponse;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+import java.util.function.ToIntFunction;
+
+/**
+ * Admits dashboard requests per tenant before they reach the shared schema, LLM and ClickHouse executors.
+ * Each cmId has a token bucket for its request rate and a cap on requests running at once; requests over the
+ * cap wait in a bounded per-tenant queue. Caps come from the tenant's tier, so a heavy tenant is held to its
+ * share of the executors instead of filling them. Over-limit requests fail fast with 429 and Retry-After.
+ * Tenants idle long enough to hold a full bucket are evicted, and meters are tagged by tier only, so neither
+ * memory nor metric series grow with the number of tenants ever seen.
+ */
+@Component
+@Slf4j
+public class TenantAdmissionController {
+
+    private final TenantAdmissionProperties properties;
+    private final QueryGuardrails queryGuardrails;
+    private final MeterRegistry meterRegistry;
+    private final ConcurrentHashMap<Integer, TenantState> tenants = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Timer> waitTimers = new ConcurrentHashMap<>();
+
+    @Autowired
+    public TenantAdmissionController(TenantAdmissionProperties properties, QueryGuardrails queryGuardrails, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.queryGuardrails = queryGuardrails;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Takes a token and a running slot for the tenant. The returned future completes once the request may run,
+     * immediately or after queued requests of the same tenant finish; the permit must be released afterwards.
+     */
+    public CompletableFuture<Permit> acquire(int cmId, BooleanSupplier cancelled) throws KaptureException {
+        if (!properties.isEnabled()) {
+            return CompletableFuture.completedFuture(Permit.NONE);
+        }
+        TenantState tenant;
+        long retryAfterSeconds;
+        do {
+            tenant = tenants.computeIfAbsent(cmId, this::newTenantState);
+            retryAfterSeconds = tenant.tryConsumeToken();
+        } while (retryAfterSeconds < 0);
+        if (retryAfterSeconds > 0) {
+            throw reject(tenant, "rate", "Too many dashboard requests, please retry in " + retryAfterSeconds + " seconds!", retryAfterSeconds);
+        }
+        Waiter waiter = tenant.admit(cancelled);
+        if (waiter == null) {
+            throw reject(tenant, "queue", "Too many dashboard requests are queued, please retry shortly!", 1);
+        }
+        return waiter.future;
+    }
+
+    private KaptureException reject(TenantState tenant, String reason, String message, long retryAfterSeconds) {
+        meterRegistry.counter("nlp.admission.rejected", "tier", tenant.tier, "reason", reason).increment();
+        return new KaptureException(BaseResponse.tooManyRequests(message, retryAfterSeconds));
+    }
+
+    private TenantState newTenantState(int cmId) {
+        String tier = queryGuardrails.getTier(cmId);
+        TenantAdmissionProperties.Limits defaults = properties.getDefaults();
+        TenantAdmissionProperties.Limits tierLimits = properties.getTiers().getOrDefault(tier, defaults);
+        return new TenantState(tier, waitTimers.computeIfAbsent(tier, this::registerTierMeters),
+                firstNonNull(tierLimits.getRequestsPerMinute(), defaults.getRequestsPerMinute(), 60),
+                firstNonNull(tierLimits.getBurst(), defaults.getBurst(), 10),
+                firstNonNull(tierLimits.getMaxConcurrent(), defaults.getMaxConcurrent(), 4),
+                firstNonNull(tierLimits.getMaxQueued(), defaults.getMaxQueued(), 20));
+    }
+
+    private Timer registerTierMeters(String tier) {
+        Tags tags = Tags.of("tier", tier);
+        meterRegistry.gauge("nlp.admission.queue", tags, this, controller -> controller.sum(tier, TenantState::queueDepth));
+        meterRegistry.gauge("nlp.admission.active", tags, this, controller -> controller.sum(tier, TenantState::activeCount));
+        return Timer.builder("nlp.admission.wait").tags(tags).publishPercentileHistogram().register(meterRegistry);
+    }
+
+    private double sum(String tier, ToIntFunction<TenantState> value) {
+        int sum = 0;
+        for (TenantState tenant : tenants.values()) {
+            if (tenant.tier.equals(tier)) {
+                sum += value.applyAsInt(tenant);
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Drops tenants with nothing running or queued whose bucket has refilled; a new state for them starts out
+     * the same, so eviction never loosens a limit.
+     */
+    @Scheduled(fixedDelayString = "${nlp.admission.idle-tenant-ttl-ms:600000}")
+    public void evictIdleTenants() {
+        long idleNanos = TimeUnit.MILLISECONDS.toNanos(properties.getIdleTenantTtlMs());
+        tenants.forEach((cmId, tenant) -> {
+            if (tenant.retireIfIdle(idleNanos)) {
+                tenants.remove(cmId, tenant);
+            }
+        });
+    }
+
+    int tenantCount() {
+        return tenants.size();
+    }
+
+    private static int firstNonNull(Integer value, Integer defaultValue, int fallback) {
+        return value != null ? value : defaultValue != null ? defaultValue : fallback;
+    }
+
+    public static class Permit {
+
+        static final Permit NONE = new Permit(null);
+
+        private final TenantState tenant;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit(TenantState tenant) {
+            this.tenant = tenant;
+        }
+
+        public void release() {
+            if (tenant != null && released.compareAndSet(false, true)) {
+                tenant.release();
+            }
+        }
+    }
+
+    private static final class Waiter {
+
+        private final CompletableFuture<Permit> future = new CompletableFuture<>();
+        private final BooleanSupplier cancelled;
+        private final long enqueuedNanos = System.nanoTime();
+
+        Waiter(BooleanSupplier cancelled) {
+            this.cancelled = cancelled;
+        }
+    }
+
+    private static final class TenantState {
+
+        private final String tier;
+        private final double tokensPerNano;
+        private final int burst;
+        private final int maxConcurrent;
+        private final int maxQueued;
+        private final Timer waitTimer;
+        private final ArrayDeque<Waiter> queue = new ArrayDeque<>();
+        private double tokens;
+        private long lastRefillNanos = System.nanoTime();
+        private long lastActiveNanos = System.nanoTime();
+        private int active;
+        private boolean retired;
+
+        TenantState(String tier, Timer waitTimer, int requestsPerMinute, int burst, int maxConcurrent, int maxQueued) {
+            this.tier = tier;
+            this.tokensPerNano = requestsPerMinute / (double) TimeUnit.MINUTES.toNanos(1);
+            this.burst = burst;
+            this.maxConcurrent = maxConcurrent;
+            this.maxQueued = maxQueued;
+            this.tokens = burst;
+            this.waitTimer = waitTimer;
+        }
+
+        // 0 when a token was taken, -1 when the state was evicted and the tenant must be looked up again,
+        // otherwise the whole seconds until the next token
+        synchronized long tryConsumeToken() {
+            if (retired) {
+                return -1;
+            }
+            long now = System.nanoTime();
+            refill(now);
+            lastActiveNanos = now;
+            if (tokens >= 1) {
+                tokens -= 1;
+                return 0;
+            }
+            return Math.max(1, (long) Math.ceil((1 - tokens) / tokensPerNano / TimeUnit.SECONDS.toNanos(1)));
+        }
+
+        private void refill(long now) {
+            tokens = Math.min(burst, tokens + (now - lastRefillNanos) * tokensPerNano);
+            lastRefillNanos = now;
+        }
+
+        // a request between its token and admit() left the bucket below burst, so its state is not retired under it
+        synchronized boolean retireIfIdle(long idleNanos) {
+            long now = System.nanoTime();
+            refill(now);
+            if (active == 0 && queue.isEmpty() && tokens >= burst && now - lastActiveNanos >= idleNanos) {
+                retired = true;
+            }
+            return retired;
+        }
+
+        // null when the tenant's queue is full
+        Waiter admit(BooleanSupplier cancelled) {
+            Waiter waiter = new Waiter(cancelled);
+            synchronized (this) {
+                if (active >= maxConcurrent) {
+                    if (queue.size() >= maxQueued) {
+                        return null;
+                    }
+                    queue.add(waiter);
+                    return waiter;
+                }
+                active++;
+            }
+            grant(waiter);
+            return waiter;
+        }
+
+        void release() {
+            while (true) {
+                Waiter next;
+                synchronized (this) {
+                    next = queue.poll();
+                    lastActiveNanos = System.nanoTime();
+                    if (next == null) {
+                        active--;
+                        return;
+                    }
+                }
+                // the slot passes to the next waiter that is still listening
+                if (!next.cancelled.getAsBoolean()) {
+                    grant(next);
+                    return;
+                }
+                next.future.completeExceptionally(new CancellationException("Dashboard request left the admission queue"));
+            }
+        }
+
+        private void grant(Waiter waiter) {
+            waitTimer.record(System.nanoTime() - waiter.enqueuedNanos, TimeUnit.NANOSECONDS);
+            waiter.future.complete(new Permit(this));
+        }
+
+        synchronized int queueDepth() {
+            return queue.size();
+        }
+
+        synchronized int activeCount() {
+            return active;
+        }
+    }
+
+}
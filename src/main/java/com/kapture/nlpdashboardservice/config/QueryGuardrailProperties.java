@@ -0,0 +1,40 @@
+package com.kapture.nlpdashboardservice.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * ClickHouse limits applied to every generated query. A profile is built from {@code defaults}, then the
+ * entry for the dashboard type, then the entry for the tenant's tier; only limits that are set override.
+ */
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "nlp.query-guardrails")
+public class QueryGuardrailProperties {
+
+    private boolean enabled = true;
+    private Limits defaults = new Limits();
+    // keyed by lower case dashboard type, e.g. table, bar, text
+    private Map<String, Limits> dashboardTypes = new HashMap<>();
+    // keyed by tier name
+    private Map<String, Limits> tiers = new HashMap<>();
+    // cm_id -> tier name, tenants that are not listed use defaultTier
+    private Map<Integer, String> tenantTiers = new HashMap<>();
+    private String defaultTier = "standard";
+
+    @Getter
+    @Setter
+    public static class Limits {
+        private Integer maxExecutionTimeSeconds;
+        private Long maxMemoryUsage;
+        private Long maxRowsToRead;
+        private Long maxBytesToRead;
+    }
+
+}
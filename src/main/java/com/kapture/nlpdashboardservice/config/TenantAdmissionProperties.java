@@ -0,0 +1,39 @@
+package com.kapture.nlpdashboardservice.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Per-tenant admission limits for dashboard generation, keyed by the tier from
+ * {@code nlp.query-guardrails.tenant-tiers}. A tier only overrides the limits it sets.
+ */
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "nlp.admission")
+public class TenantAdmissionProperties {
+
+    private boolean enabled = true;
+    // tenants with nothing running, queued or owed to their bucket for this long are forgotten
+    private long idleTenantTtlMs = 600_000;
+    private Limits defaults = new Limits();
+    // keyed by tier name
+    private Map<String, Limits> tiers = new HashMap<>();
+
+    @Getter
+    @Setter
+    public static class Limits {
+        // token bucket, refilled at requestsPerMinute and holding at most burst tokens
+        private Integer requestsPerMinute;
+        private Integer burst;
+        // requests of one tenant running in the pipeline at once, further requests wait in the tenant's queue
+        private Integer maxConcurrent;
+        private Integer maxQueued;
+    }
+
+}
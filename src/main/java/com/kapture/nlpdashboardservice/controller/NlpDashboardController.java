@@ -13,7 +13,13 @@ import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.util.List;
 
 @CrossOrigin("*")
 @RestController
@@ -26,10 +32,36 @@ public class NlpDashboardController {
     private final DbSchemaService dbSchemaService;
 
     @PostMapping("/generate")
-    public ResponseEntity<?> getDataFromNlp(@RequestBody NlpDashboardReqDto reqDto) {
+    public DeferredResult<ResponseEntity<?>> getDataFromNlp(@RequestBody NlpDashboardReqDto reqDto) {
         return nlpDashboardService.generateNlpDashboard(reqDto);
     }
 
+    @PostMapping("/generate-stream")
+    public DeferredResult<ResponseEntity<StreamingResponseBody>> streamDataFromNlp(@RequestBody NlpDashboardReqDto reqDto) {
+        return nlpDashboardService.generateNlpDashboardStream(reqDto);
+    }
+
+    @PostMapping("/generate-sse")
+    public SseEmitter getDataFromNlpAsEvents(@RequestBody NlpDashboardReqDto reqDto) {
+        return nlpDashboardService.generateNlpDashboardSse(reqDto);
+    }
+
+    @PostMapping("/generate-batch")
+    public DeferredResult<ResponseEntity<?>> getDashboardFromNlp(@RequestBody List<NlpDashboardReqDto> reqDtos) {
+        return nlpDashboardService.generateNlpDashboardBatch(reqDtos);
+    }
+
+    @PostMapping("/generate-batch-sse")
+    public SseEmitter getDashboardFromNlpAsEvents(@RequestBody List<NlpDashboardReqDto> reqDtos) {
+        return nlpDashboardService.generateNlpDashboardBatchSse(reqDtos);
+    }
+
+    @GetMapping("/page")
+    public DeferredResult<ResponseEntity<?>> getDashboardPage(@RequestParam String cursor,
+                                                              @RequestParam(required = false) String resultFormat) {
+        return nlpDashboardService.getDashboardPage(cursor, resultFormat);
+    }
+
     @PostMapping("/post-feedback")
     public ResponseEntity<?> postFeedback(@RequestBody FeedbackDto feedbackDto) {
         return nlpdPromptService.updateFeedback(feedbackDto);
@@ -0,0 +1,17 @@
+package com.kapture.nlpdashboardservice.dto;
+
+import com.kapture.nlpdashboardservice.utility.BaseResponse;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Outcome of one widget of a batch request; index is the widget's position in the request list and
+ * statusCode is what /generate would have answered for it alone.
+ */
+@Data
+@AllArgsConstructor
+public class BatchWidgetResult {
+    private int index;
+    private int statusCode;
+    private BaseResponse.ResponseDto result;
+}
@@ -0,0 +1,630 @@
+package com.kapture.nlpdashboardservice.dto;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonSubTypes;
+import com.fasterxml.jackson.annotation.JsonTypeInfo;
+import lombok.Getter;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Column oriented query result. Column names and ClickHouse types are sent once and every column is held
+ * in a primitive array (or a dictionary for strings), e.g.
+ * {"columns":["name","value"],"columnTypes":["String","UInt64"],"rowCount":2,
+ * "data":[{"encoding":"dict","dictionary":["open","closed"],"codes":[0,1]},{"encoding":"long","values":[12,30]}]}
+ */
+@Getter
+public class ColumnarResult implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final List<String> columns;
+    private final List<String> columnTypes;
+    private final int rowCount;
+    private final List<ColumnVector> data;
+
+    @JsonCreator
+    public ColumnarResult(@JsonProperty("columns") List<String> columns,
+                          @JsonProperty("columnTypes") List<String> columnTypes,
+                          @JsonProperty("rowCount") int rowCount,
+                          @JsonProperty("data") List<ColumnVector> data) {
+        this.columns = columns;
+        this.columnTypes = columnTypes;
+        this.rowCount = rowCount;
+        this.data = data;
+    }
+
+    public static ColumnarResult fromResultSet(ResultSet rs) throws SQLException {
+        final ResultSetMetaData meta = rs.getMetaData();
+        final int columnCount = meta.getColumnCount();
+        List<String> columns = new ArrayList<>(columnCount);
+        List<String> columnTypes = new ArrayList<>(columnCount);
+        VectorBuilder[] builders = new VectorBuilder[columnCount];
+        for (int idx = 1; idx <= columnCount; ++idx) {
+            columns.add(meta.getColumnName(idx));
+            columnTypes.add(meta.getColumnTypeName(idx));
+            builders[idx - 1] = VectorBuilder.forClickHouseType(meta.getColumnTypeName(idx));
+        }
+        int rowCount = 0;
+        while (rs.next()) {
+            for (int idx = 1; idx <= columnCount; ++idx) {
+                builders[idx - 1].read(rs, idx, rowCount);
+            }
+            rowCount++;
+        }
+        List<ColumnVector> data = new ArrayList<>(columnCount);
+        for (VectorBuilder builder : builders) {
+            data.add(builder.build(rowCount));
+        }
+        return new ColumnarResult(columns, columnTypes, rowCount, data);
+    }
+
+    public List<LinkedHashMap<String, Object>> toRows() {
+        List<LinkedHashMap<String, Object>> rows = new ArrayList<>(rowCount);
+        for (int row = 0; row < rowCount; row++) {
+            LinkedHashMap<String, Object> rowObj = new LinkedHashMap<>();
+            for (int col = 0; col < columns.size(); col++) {
+                rowObj.put(columns.get(col), data.get(col).getString(row));
+            }
+            rows.add(rowObj);
+        }
+        return rows;
+    }
+
+    /**
+     * Rows [from, to) as a new result; dictionaries are shared with this one.
+     */
+    public ColumnarResult slice(int from, int to) {
+        int start = Math.min(Math.max(0, from), rowCount);
+        int end = Math.min(Math.max(start, to), rowCount);
+        if (start == 0 && end == rowCount) {
+            return this;
+        }
+        List<ColumnVector> sliced = new ArrayList<>(data.size());
+        for (ColumnVector vector : data) {
+            sliced.add(vector.slice(start, end));
+        }
+        return new ColumnarResult(columns, columnTypes, end - start, sliced);
+    }
+
+    /**
+     * The given rows, in the given order, as a new result.
+     */
+    public ColumnarResult take(int[] rows) {
+        List<ColumnVector> taken = new ArrayList<>(data.size());
+        for (ColumnVector vector : data) {
+            taken.add(vector.take(rows));
+        }
+        return new ColumnarResult(columns, columnTypes, rows.length, taken);
+    }
+
+    /**
+     * This result with one column replaced by a vector of the same row count.
+     */
+    public ColumnarResult withColumn(int index, ColumnVector vector) {
+        List<ColumnVector> replaced = new ArrayList<>(data);
+        replaced.set(index, vector);
+        return new ColumnarResult(columns, columnTypes, rowCount, replaced);
+    }
+
+    @JsonIgnore
+    public int estimateSizeBytes() {
+        long size = 128;
+        for (ColumnVector vector : data) {
+            size += vector.estimateSizeBytes();
+        }
+        return (int) Math.min(Integer.MAX_VALUE, size);
+    }
+
+    @JsonTypeInfo(use = JsonTypeInfo.Id.NAME, property = "encoding")
+    @JsonSubTypes({
+            @JsonSubTypes.Type(value = IntVector.class, name = "int"),
+            @JsonSubTypes.Type(value = LongVector.class, name = "long"),
+            @JsonSubTypes.Type(value = DoubleVector.class, name = "double"),
+            @JsonSubTypes.Type(value = DecimalVector.class, name = "decimal"),
+            @JsonSubTypes.Type(value = DictionaryVector.class, name = "dict")
+    })
+    public abstract static class ColumnVector implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        @JsonIgnore
+        public abstract boolean isNull(int row);
+
+        @JsonIgnore
+        public abstract String getString(int row);
+
+        @JsonIgnore
+        public boolean isNumeric() {
+            return !(this instanceof DictionaryVector);
+        }
+
+        @JsonIgnore
+        public double getDouble(int row) {
+            throw new UnsupportedOperationException("Not a numeric column");
+        }
+
+        abstract long estimateSizeBytes();
+
+        abstract ColumnVector slice(int from, int to);
+
+        abstract ColumnVector take(int[] rows);
+
+        int[] takeNulls(int[] rows) {
+            int[] taken = new int[rows.length];
+            int count = 0;
+            for (int i = 0; i < rows.length; i++) {
+                if (isNull(rows[i])) {
+                    taken[count++] = i;
+                }
+            }
+            return Arrays.copyOf(taken, count);
+        }
+
+        static int[] sliceNulls(int[] nulls, int from, int to) {
+            int start = Arrays.binarySearch(nulls, from);
+            int end = Arrays.binarySearch(nulls, to);
+            start = start < 0 ? -start - 1 : start;
+            end = end < 0 ? -end - 1 : end;
+            int[] sliced = Arrays.copyOfRange(nulls, start, end);
+            for (int i = 0; i < sliced.length; i++) {
+                sliced[i] -= from;
+            }
+            return sliced;
+        }
+    }
+
+    @Getter
+    public static class IntVector extends ColumnVector {
+        private final int[] values;
+        @JsonInclude(JsonInclude.Include.NON_EMPTY)
+        private final int[] nulls;
+
+        // nulls is left out of the json when empty
+        @JsonCreator
+        public IntVector(@JsonProperty("values") int[] values, @JsonProperty("nulls") int[] nulls) {
+            this.values = values;
+            this.nulls = nulls == null ? new int[0] : nulls;
+        }
+
+        @Override
+        public boolean isNull(int row) {
+            return Arrays.binarySearch(nulls, row) >= 0;
+        }
+
+        @Override
+        public String getString(int row) {
+            return isNull(row) ? "null" : String.valueOf(values[row]);
+        }
+
+        @Override
+        public double getDouble(int row) {
+            return values[row];
+        }
+
+        @Override
+        long estimateSizeBytes() {
+            return 32 + 4L * values.length + 4L * nulls.length;
+        }
+
+        @Override
+        ColumnVector slice(int from, int to) {
+            return new IntVector(Arrays.copyOfRange(values, from, to), sliceNulls(nulls, from, to));
+        }
+
+        @Override
+        ColumnVector take(int[] rows) {
+            int[] taken = new int[rows.length];
+            for (int i = 0; i < rows.length; i++) {
+                taken[i] = values[rows[i]];
+            }
+            return new IntVector(taken, takeNulls(rows));
+        }
+    }
+
+    @Getter
+    public static class LongVector extends ColumnVector {
+        private final long[] values;
+        @JsonInclude(JsonInclude.Include.NON_EMPTY)
+        private final int[] nulls;
+
+        @JsonCreator
+        public LongVector(@JsonProperty("values") long[] values, @JsonProperty("nulls") int[] nulls) {
+            this.values = values;
+            this.nulls = nulls == null ? new int[0] : nulls;
+        }
+
+        @Override
+        public boolean isNull(int row) {
+            return Arrays.binarySearch(nulls, row) >= 0;
+        }
+
+        @Override
+        public String getString(int row) {
+            return isNull(row) ? "null" : String.valueOf(values[row]);
+        }
+
+        @Override
+        public double getDouble(int row) {
+            return values[row];
+        }
+
+        @Override
+        long estimateSizeBytes() {
+            return 32 + 8L * values.length + 4L * nulls.length;
+        }
+
+        @Override
+        ColumnVector slice(int from, int to) {
+            return new LongVector(Arrays.copyOfRange(values, from, to), sliceNulls(nulls, from, to));
+        }
+
+        @Override
+        ColumnVector take(int[] rows) {
+            long[] taken = new long[rows.length];
+            for (int i = 0; i < rows.length; i++) {
+                taken[i] = values[rows[i]];
+            }
+            return new LongVector(taken, takeNulls(rows));
+        }
+    }
+
+    @Getter
+    public static class DoubleVector extends ColumnVector {
+        private final double[] values;
+        @JsonInclude(JsonInclude.Include.NON_EMPTY)
+        private final int[] nulls;
+
+        @JsonCreator
+        public DoubleVector(@JsonProperty("values") double[] values, @JsonProperty("nulls") int[] nulls) {
+            this.values = values;
+            this.nulls = nulls == null ? new int[0] : nulls;
+        }
+
+        @Override
+        public boolean isNull(int row) {
+            return Arrays.binarySearch(nulls, row) >= 0;
+        }
+
+        @Override
+        public String getString(int row) {
+            return isNull(row) ? "null" : formatDouble(values[row]);
+        }
+
+        @Override
+        public double getDouble(int row) {
+            return values[row];
+        }
+
+        @Override
+        long estimateSizeBytes() {
+            return 32 + 8L * values.length + 4L * nulls.length;
+        }
+
+        // Double.toString switches to E-notation outside [1e-3, 1e7), rows keep the plain form
+        static String formatDouble(double value) {
+            if (!Double.isFinite(value) || value == 0 || (Math.abs(value) >= 1e-3 && Math.abs(value) < 1e7)) {
+                return String.valueOf(value);
+            }
+            return BigDecimal.valueOf(value).stripTrailingZeros().toPlainString();
+        }
+
+        @Override
+        ColumnVector slice(int from, int to) {
+            return new DoubleVector(Arrays.copyOfRange(values, from, to), sliceNulls(nulls, from, to));
+        }
+
+        @Override
+        ColumnVector take(int[] rows) {
+            double[] taken = new double[rows.length];
+            for (int i = 0; i < rows.length; i++) {
+                taken[i] = values[rows[i]];
+            }
+            return new DoubleVector(taken, takeNulls(rows));
+        }
+    }
+
+    /**
+     * Decimal columns, and UInt64 columns with values past Long.MAX_VALUE, as plain decimal strings so no
+     * precision or scale is lost; a null value is a null entry.
+     */
+    @Getter
+    public static class DecimalVector extends ColumnVector {
+        private final String[] values;
+
+        @JsonCreator
+        public DecimalVector(@JsonProperty("values") String[] values) {
+            this.values = values;
+        }
+
+        @Override
+        public boolean isNull(int row) {
+            return values[row] == null;
+        }
+
+        @Override
+        public String getString(int row) {
+            return values[row] == null ? "null" : values[row];
+        }
+
+        @Override
+        public double getDouble(int row) {
+            return Double.parseDouble(values[row]);
+        }
+
+        @JsonIgnore
+        public BigDecimal getDecimal(int row) {
+            return new BigDecimal(values[row]);
+        }
+
+        @Override
+        long estimateSizeBytes() {
+            long size = 32 + 8L * values.length;
+            for (String value : values) {
+                size += value == null ? 0 : 48 + 2L * value.length();
+            }
+            return size;
+        }
+
+        @Override
+        ColumnVector slice(int from, int to) {
+            return new DecimalVector(Arrays.copyOfRange(values, from, to));
+        }
+
+        @Override
+        ColumnVector take(int[] rows) {
+            String[] taken = new String[rows.length];
+            for (int i = 0; i < rows.length; i++) {
+                taken[i] = values[rows[i]];
+            }
+            return new DecimalVector(taken);
+        }
+    }
+
+    /**
+     * Strings are dictionary encoded, a null value has code -1.
+     */
+    @Getter
+    public static class DictionaryVector extends ColumnVector {
+        private final String[] dictionary;
+        private final int[] codes;
+
+        @JsonCreator
+        public DictionaryVector(@JsonProperty("dictionary") String[] dictionary, @JsonProperty("codes") int[] codes) {
+            this.dictionary = dictionary;
+            this.codes = codes;
+        }
+
+        @Override
+        public boolean isNull(int row) {
+            return codes[row] < 0;
+        }
+
+        @Override
+        public String getString(int row) {
+            return codes[row] < 0 ? "null" : dictionary[codes[row]];
+        }
+
+        @Override
+        long estimateSizeBytes() {
+            long size = 32 + 4L * codes.length;
+            for (String value : dictionary) {
+                size += 48 + 2L * value.length();
+            }
+            return size;
+        }
+
+        @Override
+        ColumnVector slice(int from, int to) {
+            return new DictionaryVector(dictionary, Arrays.copyOfRange(codes, from, to));
+        }
+
+        @Override
+        ColumnVector take(int[] rows) {
+            int[] taken = new int[rows.length];
+            for (int i = 0; i < rows.length; i++) {
+                taken[i] = codes[rows[i]];
+            }
+            return new DictionaryVector(dictionary, taken);
+        }
+    }
+
+    private abstract static class VectorBuilder {
+
+        protected int[] nulls = new int[8];
+        protected int nullCount;
+
+        static VectorBuilder forClickHouseType(String typeName) {
+            String type = unwrap(typeName);
+            return switch (type) {
+                case "Int8", "Int16", "Int32", "UInt8", "UInt16" -> new IntVectorBuilder();
+                case "Int64", "UInt32" -> new LongVectorBuilder();
+                case "UInt64" -> new UnsignedLongVectorBuilder();
+                case "Float32" -> new DoubleVectorBuilder(true);
+                case "Float64" -> new DoubleVectorBuilder(false);
+                default -> type.startsWith("Decimal") ? new DecimalVectorBuilder() : new DictionaryVectorBuilder();
+            };
+        }
+
+        private static String unwrap(String typeName) {
+            String type = typeName == null ? "" : typeName.trim();
+            while (type.startsWith("Nullable(") || type.startsWith("LowCardinality(")) {
+                type = type.substring(type.indexOf('(') + 1, type.length() - 1);
+            }
+            return type;
+        }
+
+        abstract void read(ResultSet rs, int idx, int row) throws SQLException;
+
+        abstract ColumnVector build(int rowCount);
+
+        protected void markNull(int row) {
+            if (nullCount == nulls.length) {
+                nulls = Arrays.copyOf(nulls, nullCount * 2);
+            }
+            nulls[nullCount++] = row;
+        }
+
+        protected int[] trimmedNulls() {
+            return Arrays.copyOf(nulls, nullCount);
+        }
+
+        protected static int grow(int capacity, int row) {
+            return row < capacity ? capacity : Math.max(capacity * 2, 256);
+        }
+    }
+
+    private static class IntVectorBuilder extends VectorBuilder {
+        private int[] values = new int[0];
+
+        @Override
+        void read(ResultSet rs, int idx, int row) throws SQLException {
+            values = values.length > row ? values : Arrays.copyOf(values, grow(values.length, row));
+            values[row] = rs.getInt(idx);
+            if (rs.wasNull()) {
+                markNull(row);
+            }
+        }
+
+        @Override
+        ColumnVector build(int rowCount) {
+            return new IntVector(Arrays.copyOf(values, rowCount), trimmedNulls());
+        }
+    }
+
+    private static class LongVectorBuilder extends VectorBuilder {
+        private long[] values = new long[0];
+
+        @Override
+        void read(ResultSet rs, int idx, int row) throws SQLException {
+            values = values.length > row ? values : Arrays.copyOf(values, grow(values.length, row));
+            values[row] = rs.getLong(idx);
+            if (rs.wasNull()) {
+                markNull(row);
+            }
+        }
+
+        @Override
+        ColumnVector build(int rowCount) {
+            return new LongVector(Arrays.copyOf(values, rowCount), trimmedNulls());
+        }
+    }
+
+    /**
+     * UInt64 is kept as its 64 bits; the column stays a LongVector unless some value is past Long.MAX_VALUE.
+     */
+    private static class UnsignedLongVectorBuilder extends VectorBuilder {
+        private long[] values = new long[0];
+        private boolean overflow;
+
+        @Override
+        void read(ResultSet rs, int idx, int row) throws SQLException {
+            values = values.length > row ? values : Arrays.copyOf(values, grow(values.length, row));
+            Object value = rs.getObject(idx);
+            if (value == null) {
+                values[row] = 0;
+                markNull(row);
+                return;
+            }
+            // BigInteger and the driver's unsigned types return their low 64 bits here
+            values[row] = value instanceof Number ? ((Number) value).longValue() : Long.parseUnsignedLong(String.valueOf(value));
+            overflow |= values[row] < 0;
+        }
+
+        @Override
+        ColumnVector build(int rowCount) {
+            if (!overflow) {
+                return new LongVector(Arrays.copyOf(values, rowCount), trimmedNulls());
+            }
+            int[] nullRows = trimmedNulls();
+            String[] decimals = new String[rowCount];
+            for (int row = 0; row < rowCount; row++) {
+                decimals[row] = Arrays.binarySearch(nullRows, row) >= 0 ? null : Long.toUnsignedString(values[row]);
+            }
+            return new DecimalVector(decimals);
+        }
+    }
+
+    private static class DecimalVectorBuilder extends VectorBuilder {
+        private String[] values = new String[0];
+
+        @Override
+        void read(ResultSet rs, int idx, int row) throws SQLException {
+            values = values.length > row ? values : Arrays.copyOf(values, grow(values.length, row));
+            BigDecimal value = rs.getBigDecimal(idx);
+            values[row] = value == null ? null : value.toPlainString();
+        }
+
+        @Override
+        ColumnVector build(int rowCount) {
+            return new DecimalVector(Arrays.copyOf(values, rowCount));
+        }
+    }
+
+    private static class DoubleVectorBuilder extends VectorBuilder {
+        private final boolean singlePrecision;
+        private double[] values = new double[0];
+
+        DoubleVectorBuilder(boolean singlePrecision) {
+            this.singlePrecision = singlePrecision;
+        }
+
+        @Override
+        void read(ResultSet rs, int idx, int row) throws SQLException {
+            values = values.length > row ? values : Arrays.copyOf(values, grow(values.length, row));
+            // widen Float32 through its decimal form so 1.1f stays 1.1 instead of 1.100000023841858
+            values[row] = singlePrecision ? Double.parseDouble(Float.toString(rs.getFloat(idx))) : rs.getDouble(idx);
+            if (rs.wasNull()) {
+                markNull(row);
+            }
+        }
+
+        @Override
+        ColumnVector build(int rowCount) {
+            return new DoubleVector(Arrays.copyOf(values, rowCount), trimmedNulls());
+        }
+    }
+
+    private static class DictionaryVectorBuilder extends VectorBuilder {
+        private final Map<String, Integer> dictionary = new HashMap<>();
+        private final List<String> values = new ArrayList<>();
+        private int[] codes = new int[0];
+
+        @Override
+        void read(ResultSet rs, int idx, int row) throws SQLException {
+            codes = codes.length > row ? codes : Arrays.copyOf(codes, grow(codes.length, row));
+            Object value = rs.getObject(idx);
+            if (value == null) {
+                codes[row] = -1;
+                return;
+            }
+            String str = String.valueOf(value);
+            Integer code = dictionary.get(str);
+            if (code == null) {
+                code = values.size();
+                dictionary.put(str, code);
+                values.add(str);
+            }
+            codes[row] = code;
+        }
+
+        @Override
+        ColumnVector build(int rowCount) {
+            return new DictionaryVector(values.toArray(new String[0]), Arrays.copyOf(codes, rowCount));
+        }
+    }
+
+}
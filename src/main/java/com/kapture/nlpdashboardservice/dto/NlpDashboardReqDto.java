@@ -10,4 +10,7 @@ public class NlpDashboardReqDto {
     private String dashboardType;
     private Timestamp startDate;
     private Timestamp endDate;
+    private String resultFormat;
+    // table dashboards only, rows of the first page; later pages are fetched with the returned cursor
+    private Integer pageSize;
 }
\ No newline at end of file
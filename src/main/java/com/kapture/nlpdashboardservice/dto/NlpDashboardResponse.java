@@ -1,5 +1,6 @@
 package com.kapture.nlpdashboardservice.dto;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.Data;
 
 import java.util.Collection;
@@ -8,9 +9,50 @@ import java.util.List;
 
 @Data
 public class NlpDashboardResponse {
+    public static final String COLUMNAR_FORMAT = "columnar";
+
     private int promptId;
     private String dashboardType;
     private Collection<String> dashboardColumns;
     private List<LinkedHashMap<String, Object>> dashboardValues;
+    private ColumnarResult columnarValues;
     private String textResponse;
+    private boolean fromCache;
+    private long dataAgeMillis;
+    // true when a table query ran on a SAMPLE of its main table, the rows are about sampleRatio of the matching rows
+    private boolean approximate;
+    private Double sampleRatio;
+    // set when a paginated table has more rows, pass it to /nlp-dashboard/page
+    private String nextCursor;
+    @JsonIgnore
+    private PagedQuery pagedQuery;
+
+    // rows by default, the columnar layout when the client asked for resultFormat=columnar
+    public void putResult(ColumnarResult result, String resultFormat) {
+        if (result.getRowCount() > 0) {
+            dashboardColumns = result.getColumns();
+        }
+        if (COLUMNAR_FORMAT.equalsIgnoreCase(resultFormat)) {
+            columnarValues = result;
+        } else {
+            dashboardValues = result.toRows();
+        }
+    }
+
+    public NlpDashboardResponse copy() {
+        NlpDashboardResponse copy = new NlpDashboardResponse();
+        copy.setPromptId(promptId);
+        copy.setDashboardType(dashboardType);
+        copy.setDashboardColumns(dashboardColumns);
+        copy.setDashboardValues(dashboardValues);
+        copy.setColumnarValues(columnarValues);
+        copy.setTextResponse(textResponse);
+        copy.setFromCache(fromCache);
+        copy.setDataAgeMillis(dataAgeMillis);
+        copy.setApproximate(approximate);
+        copy.setSampleRatio(sampleRatio);
+        copy.setNextCursor(nextCursor);
+        copy.setPagedQuery(pagedQuery);
+        return copy;
+    }
 }
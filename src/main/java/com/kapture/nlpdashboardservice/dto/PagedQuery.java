@@ -0,0 +1,22 @@
+package com.kapture.nlpdashboardservice.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * What is needed to serve later pages of a paginated dashboard, stored per promptId.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PagedQuery {
+    private int cmId;
+    private String dashboardType;
+    // validated SQL, key of the full result in QueryResultCache
+    private String finalSql;
+    // SQL that was actually run, differs from finalSql when it was sampled
+    private String executedSql;
+    private int pageSize;
+    private Double sampleRatio;
+}
@@ -0,0 +1,26 @@
+package com.kapture.nlpdashboardservice.dto;
+
+import lombok.Getter;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Rows and parts ClickHouse expects to read for a query, as reported by EXPLAIN ESTIMATE.
+ */
+@Getter
+public class QueryEstimate {
+
+    // table name without database -> estimated rows
+    private final Map<String, Long> rowsByTable;
+    private final long totalRows;
+    private final long totalParts;
+
+    public QueryEstimate(Map<String, Long> rowsByTable, long totalParts) {
+        this.rowsByTable = Collections.unmodifiableMap(new LinkedHashMap<>(rowsByTable));
+        this.totalRows = rowsByTable.values().stream().mapToLong(Long::longValue).sum();
+        this.totalParts = totalParts;
+    }
+
+}
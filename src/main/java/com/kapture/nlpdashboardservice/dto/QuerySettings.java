@@ -0,0 +1,51 @@
+package com.kapture.nlpdashboardservice.dto;
+
+import lombok.Getter;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * ClickHouse settings sent with one query as a trailing SETTINGS clause.
+ */
+@Getter
+public class QuerySettings {
+
+    public static final QuerySettings NONE = new QuerySettings(Map.of());
+
+    private final Map<String, Object> settings;
+    private final String clause;
+
+    public QuerySettings(Map<String, Object> settings) {
+        this.settings = Collections.unmodifiableMap(new LinkedHashMap<>(settings));
+        this.clause = buildClause(this.settings);
+    }
+
+    public String applyTo(String sql) {
+        return clause.isEmpty() ? sql : sql + clause;
+    }
+
+    private static String buildClause(Map<String, Object> settings) {
+        if (settings.isEmpty()) {
+            return "";
+        }
+        StringBuilder clause = new StringBuilder("\nSETTINGS ");
+        boolean first = true;
+        for (Map.Entry<String, Object> entry : settings.entrySet()) {
+            if (!first) {
+                clause.append(", ");
+            }
+            first = false;
+            clause.append(entry.getKey()).append(" = ");
+            Object value = entry.getValue();
+            if (value instanceof Number) {
+                clause.append(value);
+            } else {
+                clause.append('\'').append(String.valueOf(value).replace("'", "")).append('\'');
+            }
+        }
+        return clause.toString();
+    }
+
+}
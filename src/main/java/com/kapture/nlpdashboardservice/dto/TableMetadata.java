@@ -0,0 +1,12 @@
+package com.kapture.nlpdashboardservice.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+@Getter
+@AllArgsConstructor
+public class TableMetadata {
+    private final String name;
+    private final long modificationTime;
+    private final String samplingKey;
+}
@@ -9,11 +9,12 @@ import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.Table;
 import java.sql.Timestamp;
 
 @Entity
-@Table(name = "nlpd_prompt")
+@Table(name = "nlpd_prompt", indexes = @Index(name = "idx_nlpd_prompt_cm_emp_time", columnList = "cm_id, emp_id, create_time"))
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
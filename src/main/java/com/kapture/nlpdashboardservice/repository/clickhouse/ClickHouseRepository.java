@@ -1,8 +1,11 @@
 package com.kapture.nlpdashboardservice.repository.clickhouse;
 
 
-import com.kapture.nlpdashboardservice.cache.TableNameToSchemaCache;
 import com.kapture.nlpdashboardservice.component.ClickHouseDBManager;
+import com.kapture.nlpdashboardservice.dto.ColumnarResult;
+import com.kapture.nlpdashboardservice.dto.QueryEstimate;
+import com.kapture.nlpdashboardservice.dto.QuerySettings;
+import com.kapture.nlpdashboardservice.dto.TableMetadata;
 import com.kapture.nlpdashboardservice.exception.KaptureException;
 import com.kapture.nlpdashboardservice.utility.BaseResponse;
 import lombok.RequiredArgsConstructor;
@@ -11,90 +14,282 @@ import net.sf.json.JSONObject;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.stereotype.Repository;
 
+import javax.annotation.PreDestroy;
+import java.io.IOException;
 import java.sql.Connection;
-import java.sql.DatabaseMetaData;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 @Repository
 @Slf4j
 @RequiredArgsConstructor(onConstructor = @__(@Autowired))
 public class ClickHouseRepository {
 
-    private final TableNameToSchemaCache tableNameToSchemaCache;
+    private final ClickHouseDBManager clickHouseDBManager;
+
+    // ClickHouse error codes raised when a query hits one of the QuerySettings limits
+    private static final Map<Integer, String> GUARDRAIL_ERRORS = Map.of(
+            159, "The query took too long, please narrow the date range or add filters!",
+            241, "The query needs too much memory, please narrow the date range or add filters!",
+            158, "The query reads too many rows, please narrow the date range or add filters!",
+            307, "The query reads too much data, please narrow the date range or add filters!");
+    private static final Pattern ERROR_CODE = Pattern.compile("Code: (\\d+)");
+
+    // the query each worker thread is running, so a stage that gave up on it can cancel it
+    private final Map<Thread, Statement> runningStatements = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService streamWatchdog = Executors.newSingleThreadScheduledExecutor(daemonThreadFactory("nlp-stream-watchdog-"));
+    private final ThreadFactory streamAbortThreadFactory = daemonThreadFactory("nlp-stream-abort-");
 
     public List<LinkedHashMap<String, Object>> findListOfDataFromSql(String sql) throws KaptureException {
-        List<LinkedHashMap<String, Object>> resp = new ArrayList<>();
+        return findColumnarDataFromSql(sql, QuerySettings.NONE).toRows();
+    }
+
+    public ColumnarResult findColumnarDataFromSql(String sql, QuerySettings settings) throws KaptureException {
         Connection conn = null;
         try {
-            conn = ClickHouseDBManager.getConnection();
-            PreparedStatement ps = conn.prepareStatement(sql);
+            conn = clickHouseDBManager.getConnection();
+            PreparedStatement ps = conn.prepareStatement(settings.applyTo(sql));
+            runningStatements.put(Thread.currentThread(), ps);
             ResultSet rs = ps.executeQuery();
+            return ColumnarResult.fromResultSet(rs);
+        } catch (Exception e) {
+            throw toKaptureException("findColumnarDataFromSql", e);
+        } finally {
+            runningStatements.remove(Thread.currentThread());
+            ClickHouseDBManager.closeConn(conn);
+        }
+    }
+
+    /**
+     * Cancels the query the given thread is running, if any; the thread then fails out of its executeQuery.
+     */
+    public void cancelRunningQuery(Thread worker) {
+        Statement statement = runningStatements.get(worker);
+        if (statement == null) {
+            return;
+        }
+        try {
+            statement.cancel();
+        } catch (Exception e) {
+            log.warn("Could not cancel ClickHouse query on {}: {}", worker.getName(), e.getMessage());
+        }
+    }
+
+    /**
+     * Streams the rows to the consumer; a stream that makes no progress for idleTimeoutMs, whether ClickHouse or the
+     * client stalled, has its query cancelled, its ResultSet closed and its consumer aborted, so a write blocked on the
+     * client's socket fails as well, and fails with 504. An IOException of the
+     * consumer means the client went away and is rethrown, the caller must not take the partial stream as complete.
+     */
+    public int streamListOfDataFromSql(String sql, QuerySettings settings, int fetchSize, long idleTimeoutMs,
+                                       ClickHouseRowConsumer consumer) throws KaptureException, IOException {
+        Connection conn = null;
+        ScheduledFuture<?> watchdog = null;
+        AtomicLong lastProgress = new AtomicLong(System.nanoTime());
+        AtomicBoolean stalled = new AtomicBoolean();
+        int rowCount = 0;
+        try {
+            conn = clickHouseDBManager.getConnection();
+            PreparedStatement ps = conn.prepareStatement(settings.applyTo(sql));
+            ps.setFetchSize(fetchSize);
+            ResultSet rs = ps.executeQuery();
+            long idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(idleTimeoutMs);
+            watchdog = streamWatchdog.scheduleWithFixedDelay(() -> {
+                if (System.nanoTime() - lastProgress.get() > idleTimeoutNanos && stalled.compareAndSet(false, true)) {
+                    closeStalledStream(ps, rs);
+                    abortStalledConsumer(consumer);
+                }
+            }, idleTimeoutMs, Math.max(1, idleTimeoutMs / 4), TimeUnit.MILLISECONDS);
             final ResultSetMetaData meta = rs.getMetaData();
             final int columnCount = meta.getColumnCount();
+            List<String> columnNames = new ArrayList<>(columnCount);
+            List<String> columnTypes = new ArrayList<>(columnCount);
+            for (int idx = 1; idx <= columnCount; ++idx) {
+                columnNames.add(meta.getColumnName(idx));
+                columnTypes.add(meta.getColumnTypeName(idx));
+            }
+            consumer.onColumns(columnNames, columnTypes);
+            Object[] values = new Object[columnCount];
             while (rs.next()) {
-                LinkedHashMap<String, Object> rowObj = new LinkedHashMap<>();
                 for (int idx = 1; idx <= columnCount; ++idx) {
-                    Object value = rs.getObject(idx);
-                    rowObj.put(meta.getColumnName(idx), String.valueOf(value));
+                    values[idx - 1] = rs.getObject(idx);
                 }
-                resp.add(rowObj);
+                // the consumer writes straight to the client, a slow reader blocks here instead of buffering rows
+                consumer.onRow(values);
+                rowCount++;
+                lastProgress.set(System.nanoTime());
+            }
+            if (stalled.get()) {
+                throw new SQLException("stream closed while idle");
             }
         } catch (Exception e) {
-            e.printStackTrace();
-            log.error("Error in findListOfDataFromSql", e);
-            throw new KaptureException(BaseResponse.error(HttpStatus.INTERNAL_SERVER_ERROR, "AI generated incorrect SQL"));
+            if (stalled.get()) {
+                log.warn("streamListOfDataFromSql idle for more than {} ms, closed after {} rows", idleTimeoutMs, rowCount);
+                throw new KaptureException(BaseResponse.error(HttpStatus.GATEWAY_TIMEOUT, "The export stalled and was stopped, please retry!"));
+            }
+            if (e instanceof IOException) {
+                log.warn("Client aborted streamListOfDataFromSql after {} rows: {}", rowCount, e.getMessage());
+                throw (IOException) e;
+            }
+            throw toKaptureException("streamListOfDataFromSql", e);
         } finally {
+            if (watchdog != null) {
+                watchdog.cancel(false);
+            }
             ClickHouseDBManager.closeConn(conn);
         }
-        return resp;
+        return rowCount;
     }
 
-    public void findDBTableSchema(String tableName, JSONObject dbSchema) {
-        String tableSchema = tableNameToSchemaCache.get(tableName);
-        if (tableSchema != null) {
-            dbSchema.put(tableName, tableSchema);
-            return;
+    private static void closeStalledStream(Statement statement, ResultSet rs) {
+        try {
+            statement.cancel();
+        } catch (Exception e) {
+            log.warn("Could not cancel stalled ClickHouse stream: {}", e.getMessage());
         }
+        try {
+            rs.close();
+        } catch (Exception e) {
+            log.warn("Could not close stalled ClickHouse stream: {}", e.getMessage());
+        }
+    }
+
+    // closing a stalled client's output can block on its socket too, so it gets a thread of its own and the watchdog keeps watching
+    private void abortStalledConsumer(ClickHouseRowConsumer consumer) {
+        streamAbortThreadFactory.newThread(() -> {
+            try {
+                consumer.abort();
+            } catch (Exception e) {
+                log.warn("Could not abort stalled stream consumer: {}", e.getMessage());
+            }
+        }).start();
+    }
+
+    private static CustomizableThreadFactory daemonThreadFactory(String threadNamePrefix) {
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory(threadNamePrefix);
+        threadFactory.setDaemon(true);
+        return threadFactory;
+    }
+
+    @PreDestroy
+    public void shutdownStreamWatchdog() {
+        streamWatchdog.shutdownNow();
+    }
+
+    /**
+     * Runs EXPLAIN ESTIMATE for the query; returns null when ClickHouse could not estimate it.
+     */
+    public QueryEstimate explainEstimate(String sql) {
         Connection conn = null;
         try {
-            conn = ClickHouseDBManager.getConnection();
-            String dbName = conn.getCatalog();
-            DatabaseMetaData metaData = conn.getMetaData();
-            ResultSet rs = metaData.getColumns(dbName, null, tableName, null);
-            JSONObject schema = new JSONObject();
+            conn = clickHouseDBManager.getConnection();
+            PreparedStatement ps = conn.prepareStatement("EXPLAIN ESTIMATE " + sql);
+            ResultSet rs = ps.executeQuery();
+            Map<String, Long> rowsByTable = new LinkedHashMap<>();
+            long parts = 0;
             while (rs.next()) {
-                String columnName = rs.getString("COLUMN_NAME");
-                String columnType = rs.getString("TYPE_NAME");
-                String comment = rs.getString("REMARKS");
-                schema.put(columnName, StringUtils.isEmpty(comment) ? ("Type:" + columnType) : ("Type:" + columnType + ", Remarks:" + comment));
+                rowsByTable.merge(rs.getString("table"), rs.getLong("rows"), Long::sum);
+                parts += rs.getLong("parts");
             }
-            dbSchema.put(tableName, schema);
-            try {
-                new Thread(() -> tableNameToSchemaCache.put(tableName, schema.toString())).start();
-            } catch (Exception e) {
-                e.printStackTrace();
+            return new QueryEstimate(rowsByTable, parts);
+        } catch (Exception e) {
+            log.warn("Could not estimate query cost: {}", e.getMessage());
+            return null;
+        } finally {
+            ClickHouseDBManager.closeConn(conn);
+        }
+    }
+
+    private static KaptureException toKaptureException(String operation, Exception e) {
+        int errorCode = findErrorCode(e);
+        String guardrailMessage = GUARDRAIL_ERRORS.get(errorCode);
+        if (guardrailMessage != null) {
+            log.warn("Query guardrail hit in {}, code {}: {}", operation, errorCode, e.getMessage());
+            return new KaptureException(BaseResponse.error(HttpStatus.UNPROCESSABLE_ENTITY, guardrailMessage));
+        }
+        log.error("Error in " + operation, e);
+        return new KaptureException(BaseResponse.error(HttpStatus.INTERNAL_SERVER_ERROR, "AI generated incorrect SQL"));
+    }
+
+    private static int findErrorCode(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SQLException && GUARDRAIL_ERRORS.containsKey(((SQLException) cause).getErrorCode())) {
+                return ((SQLException) cause).getErrorCode();
+            }
+            if (cause.getMessage() != null) {
+                Matcher matcher = ERROR_CODE.matcher(cause.getMessage());
+                if (matcher.find()) {
+                    return Integer.parseInt(matcher.group(1));
+                }
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Loads the columns of all given tables with one system.columns query instead of a
+     * DatabaseMetaData.getColumns call per table. Tables that do not exist are left out.
+     */
+    public Map<String, JSONObject> findDBTableSchemas(Collection<String> tableNames) {
+        Map<String, JSONObject> schemas = new LinkedHashMap<>();
+        if (tableNames.isEmpty()) {
+            return schemas;
+        }
+        Connection conn = null;
+        try {
+            conn = clickHouseDBManager.getConnection();
+            String sql = "SELECT table, name, type, comment FROM system.columns WHERE database IN ('kapture') AND table IN ("
+                    + String.join(",", Collections.nCopies(tableNames.size(), "?")) + ") ORDER BY table, position";
+            PreparedStatement ps = conn.prepareStatement(sql);
+            int idx = 1;
+            for (String tableName : tableNames) {
+                ps.setString(idx++, tableName);
+            }
+            ResultSet rs = ps.executeQuery();
+            while (rs.next()) {
+                String tableName = rs.getString("table");
+                String columnName = rs.getString("name");
+                String columnType = rs.getString("type");
+                String comment = rs.getString("comment");
+                schemas.computeIfAbsent(tableName, key -> new JSONObject())
+                        .put(columnName, StringUtils.isEmpty(comment) ? ("Type:" + columnType) : ("Type:" + columnType + ", Remarks:" + comment));
             }
         } catch (Exception e) {
-            e.printStackTrace();
-            log.error("Error in findDBTableSchema", e);
+            log.error("Error in findDBTableSchemas", e);
         } finally {
             ClickHouseDBManager.closeConn(conn);
         }
+        return schemas;
     }
 
     @Deprecated
     public void findTableSchemaByNamePattern(String tableNameKey, JSONObject schema) {
         Connection conn = null;
         try {
-            conn = ClickHouseDBManager.getConnection();
+            conn = clickHouseDBManager.getConnection();
             String sql = "SELECT * FROM INFORMATION_SCHEMA.COLUMNS WHERE table_name LIKE '%" + tableNameKey + "%';";
             PreparedStatement ps = conn.prepareStatement(sql);
             ResultSet rs = ps.executeQuery();
@@ -118,23 +313,24 @@ public class ClickHouseRepository {
         }
     }
 
-    public void findAllTableNames(HashSet<String> chTableNames) {
+    public Map<String, TableMetadata> findTableMetadata() {
+        Map<String, TableMetadata> tables = new LinkedHashMap<>();
         Connection conn = null;
         try {
-            conn = ClickHouseDBManager.getConnection();
-            String query = "SELECT name FROM system.tables WHERE database IN ('kapture')";
+            conn = clickHouseDBManager.getConnection();
+            String query = "SELECT name, toUnixTimestamp(metadata_modification_time) AS modified, sampling_key FROM system.tables WHERE database IN ('kapture')";
             PreparedStatement ps = conn.prepareStatement(query);
             ResultSet rs = ps.executeQuery();
             while (rs.next()) {
                 String tableName = rs.getString("name");
-                chTableNames.add(tableName);
+                tables.put(tableName, new TableMetadata(tableName, rs.getLong("modified"), rs.getString("sampling_key")));
             }
         } catch (Exception e) {
-            e.printStackTrace();
-            log.error("Error in findTableNames", e);
+            log.error("Error in findTableMetadata", e);
         } finally {
             ClickHouseDBManager.closeConn(conn);
         }
+        return tables;
     }
 
 }
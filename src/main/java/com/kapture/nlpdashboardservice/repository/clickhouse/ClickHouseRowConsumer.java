@@ -0,0 +1,18 @@
+package com.kapture.nlpdashboardservice.repository.clickhouse;
+
+import java.io.IOException;
+import java.util.List;
+
+public interface ClickHouseRowConsumer {
+
+    void onColumns(List<String> columnNames, List<String> columnTypes) throws IOException;
+
+    void onRow(Object[] values) throws IOException;
+
+    /**
+     * Called from the stream watchdog when the stream stalled, so a thread blocked in onRow on a slow client fails out.
+     */
+    default void abort() throws IOException {
+    }
+
+}
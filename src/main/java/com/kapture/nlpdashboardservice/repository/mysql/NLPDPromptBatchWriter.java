@@ -0,0 +1,334 @@
+package com.kapture.nlpdashboardservice.repository.mysql;
+
+import com.kapture.nlpdashboardservice.cache.RecentPromptsCache;
+import com.kapture.nlpdashboardservice.component.DashboardExecutors;
+import com.kapture.nlpdashboardservice.model.NLPDPrompt;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+import org.hibernate.jdbc.Work;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Repository;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write-behind queue for nlpd_prompt. Prompt inserts and feedback updates are collected by a few
+ * worker threads and written as JDBC batches once a batch is full or the linger time has passed.
+ * <p>
+ * Callers get a future that completes with the generated prompt id (or the update result) after
+ * the batch commits; futures are completed on the callback executor, so whatever callers chain onto
+ * them never holds up the writer threads. When the queue is full the write runs on the caller's thread instead, so
+ * nothing is dropped under load; pending writes are flushed on shutdown. Writes still queued
+ * when the process dies are lost, which is acceptable for prompt history.
+ */
+@Repository
+@Slf4j
+public class NLPDPromptBatchWriter {
+
+    private static final String INSERT_SQL = "INSERT INTO nlpd_prompt (prompt, cm_id, emp_id, dashboard_type, create_time, is_satisfied, feedback) VALUES (?, ?, ?, ?, ?, ?, ?)";
+    private static final String FEEDBACK_SQL = "UPDATE nlpd_prompt SET is_satisfied = ?, feedback = ? WHERE id = ?";
+
+    private final SessionFactory sessionFactory;
+    private final NLPDPromptRepository nlpdPromptRepository;
+    private final RecentPromptsCache recentPromptsCache;
+    private final Executor callbackExecutor;
+    private final BlockingQueue<PendingWrite> queue;
+    private final int workerCount;
+    private final int batchSize;
+    private final long lingerMs;
+    private final List<Thread> workers = new ArrayList<>();
+    private volatile boolean running = true;
+
+    @Autowired
+    public NLPDPromptBatchWriter(SessionFactory sessionFactory,
+                                 NLPDPromptRepository nlpdPromptRepository,
+                                 RecentPromptsCache recentPromptsCache,
+                                 DashboardExecutors dashboardExecutors,
+                                 MeterRegistry meterRegistry,
+                                 @Value("${nlp.prompt-writer.queue-size:2000}") int queueSize,
+                                 @Value("${nlp.prompt-writer.threads:2}") int workerCount,
+                                 @Value("${nlp.prompt-writer.batch-size:100}") int batchSize,
+                                 @Value("${nlp.prompt-writer.linger-ms:50}") long lingerMs) {
+        this.sessionFactory = sessionFactory;
+        this.nlpdPromptRepository = nlpdPromptRepository;
+        this.recentPromptsCache = recentPromptsCache;
+        this.callbackExecutor = dashboardExecutors.getCallbackExecutor();
+        this.queue = new ArrayBlockingQueue<>(queueSize);
+        this.workerCount = workerCount;
+        this.batchSize = batchSize;
+        this.lingerMs = lingerMs;
+        meterRegistry.gaugeCollectionSize("nlp.prompt.writer.queue", Tags.empty(), queue);
+    }
+
+    @PostConstruct
+    public void start() {
+        ThreadFactory threadFactory = new CustomizableThreadFactory("nlp-prompt-writer-");
+        for (int i = 0; i < workerCount; i++) {
+            Thread worker = threadFactory.newThread(this::drainLoop);
+            workers.add(worker);
+            worker.start();
+        }
+    }
+
+    public CompletableFuture<Integer> insert(NLPDPrompt nlpdPrompt) {
+        PendingWrite write = PendingWrite.insert(nlpdPrompt);
+        enqueue(write);
+        return write.promptIdFuture;
+    }
+
+    public CompletableFuture<Boolean> updateFeedback(int promptId, Boolean isSatisfied, String feedback) {
+        PendingWrite write = PendingWrite.feedback(promptId, isSatisfied, feedback);
+        enqueue(write);
+        return write.updatedFuture;
+    }
+
+    private void enqueue(PendingWrite write) {
+        if (!running || !queue.offer(write)) {
+            // backpressure: the caller pays for its own write rather than losing it
+            flush(List.of(write));
+        }
+    }
+
+    private void drainLoop() {
+        List<PendingWrite> batch = new ArrayList<>(batchSize);
+        while (running) {
+            try {
+                PendingWrite first = queue.poll(lingerMs, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(lingerMs);
+                while (batch.size() < batchSize) {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= batchSize || remaining <= 0) {
+                        break;
+                    }
+                    PendingWrite next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                flush(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                log.error("Error in promptWriter drainLoop", e);
+                failAll(batch, e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Completes the future of every write in the batch; a write that could not be saved fails its future.
+     */
+    private void flush(List<PendingWrite> batch) {
+        try {
+            List<PendingWrite> inserts = new ArrayList<>();
+            List<PendingWrite> updates = new ArrayList<>();
+            for (PendingWrite write : batch) {
+                (write.prompt != null ? inserts : updates).add(write);
+            }
+            if (!inserts.isEmpty()) {
+                flushInserts(inserts);
+            }
+            if (!updates.isEmpty()) {
+                flushFeedback(updates);
+            }
+        } catch (Exception e) {
+            log.error("Error in promptWriter flush", e);
+            failAll(batch, e);
+        }
+    }
+
+    // futures already completed by the flush keep their result
+    private void failAll(List<PendingWrite> batch, Throwable e) {
+        for (PendingWrite write : batch) {
+            completeLater(() -> (write.prompt != null ? write.promptIdFuture : write.updatedFuture).completeExceptionally(e));
+        }
+    }
+
+    private void completeLater(Runnable completion) {
+        try {
+            callbackExecutor.execute(completion);
+        } catch (RejectedExecutionException e) {
+            // saturated or shutting down, the writer completes it itself rather than leaving the caller hanging
+            completion.run();
+        }
+    }
+
+    private void flushInserts(List<PendingWrite> inserts) {
+        boolean success = executeInTransaction(connection -> {
+            try (PreparedStatement ps = connection.prepareStatement(INSERT_SQL, Statement.RETURN_GENERATED_KEYS)) {
+                for (PendingWrite write : inserts) {
+                    NLPDPrompt prompt = write.prompt;
+                    ps.setString(1, prompt.getPrompt());
+                    ps.setInt(2, prompt.getCmId());
+                    ps.setInt(3, prompt.getEmpId());
+                    ps.setString(4, prompt.getDashboardType());
+                    ps.setTimestamp(5, prompt.getCreateTime());
+                    setNullableBoolean(ps, 6, prompt.getIsSatisfied());
+                    ps.setString(7, prompt.getFeedback());
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+                try (ResultSet keys = ps.getGeneratedKeys()) {
+                    for (PendingWrite write : inserts) {
+                        if (keys.next()) {
+                            write.prompt.setId(keys.getInt(1));
+                        }
+                    }
+                }
+            }
+        });
+        List<PendingWrite> saved = new ArrayList<>(inserts.size());
+        for (PendingWrite write : inserts) {
+            if (!success) {
+                // retry row by row so one bad prompt does not lose the whole batch
+                write.prompt.setId(0);
+                if (!nlpdPromptRepository.addPrompt(write.prompt)) {
+                    completeLater(() -> write.promptIdFuture.completeExceptionally(new IllegalStateException("Could not save prompt")));
+                    continue;
+                }
+            }
+            int promptId = write.prompt.getId();
+            completeLater(() -> write.promptIdFuture.complete(promptId));
+            saved.add(write);
+        }
+        for (PendingWrite write : saved) {
+            try {
+                recentPromptsCache.onPromptSaved(write.prompt);
+            } catch (Exception e) {
+                log.error("Error in promptWriter recentPrompts", e);
+            }
+        }
+    }
+
+    private void flushFeedback(List<PendingWrite> updates) {
+        if (executeFeedback(updates)) {
+            updates.forEach(write -> completeLater(() -> write.updatedFuture.complete(true)));
+            return;
+        }
+        // same row by row retry as the inserts, each update reports its own result
+        for (PendingWrite write : updates) {
+            boolean updated = executeFeedback(List.of(write));
+            completeLater(() -> write.updatedFuture.complete(updated));
+        }
+    }
+
+    private boolean executeFeedback(List<PendingWrite> updates) {
+        return executeInTransaction(connection -> {
+            try (PreparedStatement ps = connection.prepareStatement(FEEDBACK_SQL)) {
+                for (PendingWrite write : updates) {
+                    setNullableBoolean(ps, 1, write.isSatisfied);
+                    ps.setString(2, write.feedback);
+                    ps.setInt(3, write.promptId);
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            }
+        });
+    }
+
+    private boolean executeInTransaction(Work work) {
+        Session session = null;
+        Transaction tx = null;
+        try {
+            session = sessionFactory.openSession();
+            tx = session.beginTransaction();
+            session.doWork(work);
+            tx.commit();
+            return true;
+        } catch (Exception ex) {
+            if (tx != null) {
+                tx.rollback();
+            }
+            log.error("Error in promptWriter batch", ex);
+            return false;
+        } finally {
+            if (session != null && session.isOpen()) {
+                session.close();
+            }
+        }
+    }
+
+    private static void setNullableBoolean(PreparedStatement ps, int idx, Boolean value) throws SQLException {
+        if (value == null) {
+            ps.setNull(idx, Types.BOOLEAN);
+        } else {
+            ps.setBoolean(idx, value);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        for (Thread worker : workers) {
+            try {
+                worker.join(TimeUnit.SECONDS.toMillis(10));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        List<PendingWrite> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        for (int from = 0; from < remaining.size(); from += batchSize) {
+            flush(remaining.subList(from, Math.min(remaining.size(), from + batchSize)));
+        }
+        log.info("Prompt writer stopped, flushed {} pending writes on shutdown", remaining.size());
+    }
+
+    private static final class PendingWrite {
+
+        private final NLPDPrompt prompt;
+        private final CompletableFuture<Integer> promptIdFuture;
+        private final int promptId;
+        private final Boolean isSatisfied;
+        private final String feedback;
+        private final CompletableFuture<Boolean> updatedFuture;
+
+        private PendingWrite(NLPDPrompt prompt, int promptId, Boolean isSatisfied, String feedback) {
+            this.prompt = prompt;
+            this.promptIdFuture = prompt != null ? new CompletableFuture<>() : null;
+            this.promptId = promptId;
+            this.isSatisfied = isSatisfied;
+            this.feedback = feedback;
+            this.updatedFuture = prompt == null ? new CompletableFuture<>() : null;
+        }
+
+        static PendingWrite insert(NLPDPrompt prompt) {
+            return new PendingWrite(prompt, 0, null, null);
+        }
+
+        static PendingWrite feedback(int promptId, Boolean isSatisfied, String feedback) {
+            return new PendingWrite(null, promptId, isSatisfied, feedback);
+        }
+    }
+
+}
@@ -46,7 +46,7 @@ public class NLPDPromptRepository {
         return success;
     }
 
-    public List<NLPDPrompt> getRecentPrompts(int cmId, int empId) {
+    public List<NLPDPrompt> getRecentPrompts(int cmId, int empId, int maxResults) {
         Session session = null;
         List<NLPDPrompt> prompList = new ArrayList<>();
         try {
@@ -54,7 +54,7 @@ public class NLPDPromptRepository {
             TypedQuery<NLPDPrompt> query = session.createQuery(
                     "from NLPDPrompt where cmId = :cmId and empId = :empId order by createTime desc", NLPDPrompt.class);
             prompList = query.setParameter("cmId", cmId).setParameter("empId", empId)
-                    .setMaxResults(5)
+                    .setMaxResults(maxResults)
                     .getResultList();
         } catch (Exception ex) {
             log.error("Error in getPrompt", ex);
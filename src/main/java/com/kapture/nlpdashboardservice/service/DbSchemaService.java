@@ -1,5 +1,6 @@
 package com.kapture.nlpdashboardservice.service;
 
+import com.kapture.nlpdashboardservice.cache.PromptToSqlTemplateCache;
 import com.kapture.nlpdashboardservice.cache.TableNameToSchemaCache;
 import com.kapture.nlpdashboardservice.utility.BaseResponse;
 import lombok.RequiredArgsConstructor;
@@ -12,9 +13,14 @@ import org.springframework.stereotype.Service;
 public class DbSchemaService {
 
     private final TableNameToSchemaCache tableNameToSchemaCache;
+    private final PromptToSqlTemplateCache promptToSqlTemplateCache;
 
     public ResponseEntity<?> clearTableSchemaCache() {
-        if (tableNameToSchemaCache.clear()) {
+        // sql templates are generated against the schema, drop them along with it
+        boolean templatesCleared = promptToSqlTemplateCache.clear();
+        // publishes the clear, every node's SchemaCatalog (this one's too) reloads on it
+        boolean schemaCleared = tableNameToSchemaCache.clear();
+        if (schemaCleared && templatesCleared) {
             return BaseResponse.success();
         }
         return BaseResponse.error();
@@ -1,20 +1,23 @@
 package com.kapture.nlpdashboardservice.service;
 
+import com.kapture.nlpdashboardservice.cache.RecentPromptsCache;
 import com.kapture.nlpdashboardservice.dto.FeedbackDto;
 import com.kapture.nlpdashboardservice.model.NLPDPrompt;
-import com.kapture.nlpdashboardservice.repository.mysql.NLPDPromptRepository;
+import com.kapture.nlpdashboardservice.repository.mysql.NLPDPromptBatchWriter;
 import com.kapture.nlpdashboardservice.utility.BaseResponse;
 import com.kapturecrm.object.PartnerUser;
 import com.kapturecrm.session.SessionManager;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
 
 import javax.servlet.http.HttpServletRequest;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 @Service
 @RequiredArgsConstructor(onConstructor = @__(@Autowired))
@@ -22,18 +25,27 @@ import java.util.List;
 public class NLPDPromptService {
 
     private final HttpServletRequest httpServletRequest;
-    private final NLPDPromptRepository nlpdPromptRepository;
+    private final RecentPromptsCache recentPromptsCache;
+    private final NLPDPromptBatchWriter nlpdPromptBatchWriter;
+
+    @Value("${nlp.prompt-writer.feedback-timeout-ms:5000}")
+    private long feedbackTimeoutMs;
 
     public ResponseEntity<?> updateFeedback(FeedbackDto feedbackDto) {
         try {
             if (feedbackDto != null) {
-                NLPDPrompt NLPDPrompt = new NLPDPrompt();
-                NLPDPrompt.setId(feedbackDto.getPromptId());
-                NLPDPrompt.setIsSatisfied(feedbackDto.getIsSatisfied());
+                String feedback = null;
                 if (!feedbackDto.getIsSatisfied() && feedbackDto.getFeedback() != null) {
-                    NLPDPrompt.setFeedback(feedbackDto.getFeedback());
+                    feedback = feedbackDto.getFeedback();
                 }
-                if (nlpdPromptRepository.addPrompt(NLPDPrompt)) {
+                // only is_satisfied and feedback are written, the rest of the prompt row is left as is
+                boolean updated = nlpdPromptBatchWriter.updateFeedback(feedbackDto.getPromptId(), feedbackDto.getIsSatisfied(), feedback)
+                        .get(feedbackTimeoutMs, TimeUnit.MILLISECONDS);
+                if (updated) {
+                    PartnerUser partnerUser = SessionManager.getPartnerUser(httpServletRequest);
+                    int cmId = partnerUser != null ? partnerUser.getCmId() : 396;
+                    int empId = partnerUser != null ? partnerUser.getEmpId() : 396;
+                    recentPromptsCache.onFeedback(cmId, empId, feedbackDto.getPromptId(), feedbackDto.getIsSatisfied(), feedback);
                     return BaseResponse.success("Feedback updated successfully.");
                 } else {
                     return BaseResponse.error(HttpStatus.INTERNAL_SERVER_ERROR, "Failed to update feedback.");
@@ -53,7 +65,7 @@ public class NLPDPromptService {
             PartnerUser partnerUser = SessionManager.getPartnerUser(httpServletRequest);
             int cmId = partnerUser != null ? partnerUser.getCmId() : 396;
             int empId = partnerUser != null ? partnerUser.getEmpId() : 396;
-            List<NLPDPrompt> prompts = nlpdPromptRepository.getRecentPrompts(cmId, empId);
+            List<NLPDPrompt> prompts = recentPromptsCache.getRecentPrompts(cmId, empId);
             return BaseResponse.success(prompts);
         } catch (Exception e) {
             log.error("Error in getPrompt", e);
@@ -1,157 +1,632 @@
 package com.kapture.nlpdashboardservice.service;
 
+import com.kapture.nlpdashboardservice.cache.CachedQueryResult;
+import com.kapture.nlpdashboardservice.cache.DashboardPager;
+import com.kapture.nlpdashboardservice.cache.PagedQueryCache;
+import com.kapture.nlpdashboardservice.cache.PromptToSqlTemplateCache;
+import com.kapture.nlpdashboardservice.cache.QueryResultCache;
+import com.kapture.nlpdashboardservice.component.ChartDataReducer;
+import com.kapture.nlpdashboardservice.component.DashboardExecutors;
+import com.kapture.nlpdashboardservice.component.DashboardPipeline;
+import com.kapture.nlpdashboardservice.component.NdJsonDashboardStreamer;
+import com.kapture.nlpdashboardservice.component.OpenAiModelManager;
+import com.kapture.nlpdashboardservice.component.PipelineMetrics;
+import com.kapture.nlpdashboardservice.component.QueryCostGuard;
+import com.kapture.nlpdashboardservice.component.QueryGuardrails;
+import com.kapture.nlpdashboardservice.component.RequestCoalescer;
+import com.kapture.nlpdashboardservice.component.SchemaCompactor;
+import com.kapture.nlpdashboardservice.component.SqlValidator;
+import com.kapture.nlpdashboardservice.component.TenantAdmissionController;
+import com.kapture.nlpdashboardservice.dto.BatchWidgetResult;
+import com.kapture.nlpdashboardservice.dto.ColumnarResult;
 import com.kapture.nlpdashboardservice.dto.NlpDashboardReqDto;
 import com.kapture.nlpdashboardservice.dto.NlpDashboardResponse;
+import com.kapture.nlpdashboardservice.dto.PagedQuery;
+import com.kapture.nlpdashboardservice.dto.QuerySettings;
 import com.kapture.nlpdashboardservice.exception.KaptureException;
 import com.kapture.nlpdashboardservice.model.NLPDPrompt;
 import com.kapture.nlpdashboardservice.repository.clickhouse.ClickHouseRepository;
+import com.kapture.nlpdashboardservice.repository.mysql.NLPDPromptBatchWriter;
 import com.kapture.nlpdashboardservice.utility.BaseResponse;
-import com.kapture.nlpdashboardservice.utility.ConversionUtil;
 import com.kapture.nlpdashboardservice.utility.NlpDashboardHelper;
+import com.kapture.nlpdashboardservice.utility.NlpPromptBuilder;
 import com.kapturecrm.object.PartnerUser;
 import com.kapturecrm.session.SessionManager;
 import com.kapturecrm.utilobj.CommonUtils;
-import dev.langchain4j.model.openai.OpenAiChatModel;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.model.StreamingResponseHandler;
+import dev.langchain4j.model.output.Response;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import net.sf.json.JSONArray;
-import net.sf.json.JSONObject;
+import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import javax.servlet.http.HttpServletRequest;
+import java.util.Arrays;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
 
 @Service
 @RequiredArgsConstructor(onConstructor = @__(@Autowired))
 @Slf4j
 public class NlpDashboardService {
 
-    @Value("${openai.apiKey}")
-    private String apiKey;
+    private static final String BATCH_DASHBOARD = "batch";
+
+    @Value("${nlp.pipeline.request-timeout-ms:120000}")
+    private long requestTimeoutMs;
+
+    @Value("${nlp.dashboard.max-rows:5000}")
+    private int maxRows;
+
+    @Value("${nlp.batch.max-widgets:12}")
+    private int batchMaxWidgets;
+
+    @Value("${nlp.batch.max-parallel:4}")
+    private int batchMaxParallel;
+
+    @Value("${nlp.dashboard.stream.max-rows:100000}")
+    private int streamMaxRows;
+
+    @Value("${spring.mvc.async.request-timeout:300000}")
+    private long streamTimeoutMs;
 
     private final ClickHouseRepository clickHouseRepository;
-    private final NlpDashboardHelper nlpDashboardHelper;
     private final HttpServletRequest httpServletRequest;
-    private final com.kapture.nlpdashboardservice.repository.mysql.NLPDPromptRepository NLPDPromptRepository;
+    private final NLPDPromptBatchWriter nlpdPromptBatchWriter;
+    private final PromptToSqlTemplateCache promptToSqlTemplateCache;
+    private final QueryResultCache queryResultCache;
+    private final OpenAiModelManager openAiModelManager;
+    private final DashboardExecutors dashboardExecutors;
+    private final DashboardPipeline dashboardPipeline;
+    private final NdJsonDashboardStreamer ndJsonDashboardStreamer;
+    private final SchemaCompactor schemaCompactor;
+    private final SqlValidator sqlValidator;
+    private final QueryGuardrails queryGuardrails;
+    private final QueryCostGuard queryCostGuard;
+    private final DashboardPager dashboardPager;
+    private final ChartDataReducer chartDataReducer;
+    private final PipelineMetrics pipelineMetrics;
+    private final RequestCoalescer requestCoalescer;
+    private final TenantAdmissionController tenantAdmissionController;
+    private final NlpPromptBuilder nlpPromptBuilder;
+    private final NlpDashboardHelper nlpDashboardHelper;
+
+    public DeferredResult<ResponseEntity<?>> generateNlpDashboard(NlpDashboardReqDto reqDto) {
+        // session is request scoped, resolve it before leaving the servlet thread
+        PartnerUser partnerUser = SessionManager.getPartnerUser(httpServletRequest);
+        int cmId = partnerUser != null ? partnerUser.getCmId() : 396;
+        int empId = partnerUser != null ? partnerUser.getEmpId() : 396;
+
+        DeferredResult<ResponseEntity<?>> deferredResult = new DeferredResult<>(requestTimeoutMs,
+                BaseResponse.error(HttpStatus.GATEWAY_TIMEOUT, "Dashboard generation timed out, please retry!"));
+        AtomicBoolean cancelled = new AtomicBoolean();
+        deferredResult.onTimeout(() -> cancelled.set(true));
+        deferredResult.onError(e -> cancelled.set(true));
+
+        CompletableFuture<TenantAdmissionController.Permit> permitFuture;
+        try {
+            permitFuture = tenantAdmissionController.acquire(cmId, cancelled::get);
+        } catch (KaptureException ke) {
+            deferredResult.setResult(ke.getBaseResponse());
+            return deferredResult;
+        }
+
+        NLPDPrompt nlpdPrompt = new NLPDPrompt();
+        setPromptData(nlpdPrompt, cmId, empId, reqDto);
+        CompletableFuture<Integer> promptIdFuture = savePrompt(nlpdPrompt);
+
+        DashboardPipeline.admitted(permitFuture, () -> requestCoalescer.execute(coalescingKey(cmId, reqDto, "dashboard"), cancelled::get,
+                flightCancelled -> buildDashboard(cmId, reqDto, Map.of(), flightCancelled)))
+                .thenCombine(promptIdFuture, (resp, promptId) -> (ResponseEntity<?>) BaseResponse.success(withPromptId(resp, promptId)))
+                .exceptionally(e -> dashboardPipeline.toErrorResponse("generateNlpDashboard", e))
+                .thenAccept(deferredResult::setResult);
+        return deferredResult;
+    }
 
-    public ResponseEntity<?> generateNlpDashboard(NlpDashboardReqDto reqDto) {
-        String finalPrompt = "";
+    public SseEmitter generateNlpDashboardSse(NlpDashboardReqDto reqDto) {
+        PartnerUser partnerUser = SessionManager.getPartnerUser(httpServletRequest);
+        int cmId = partnerUser != null ? partnerUser.getCmId() : 396;
+        int empId = partnerUser != null ? partnerUser.getEmpId() : 396;
+
+        SseEmitter emitter = new SseEmitter(requestTimeoutMs);
+        AtomicBoolean cancelled = new AtomicBoolean();
+        emitter.onTimeout(() -> cancelled.set(true));
+        emitter.onError(e -> cancelled.set(true));
+
+        CompletableFuture<TenantAdmissionController.Permit> permitFuture;
         try {
-            NlpDashboardResponse resp = new NlpDashboardResponse();
-            PartnerUser partnerUser = SessionManager.getPartnerUser(httpServletRequest);
-            int cmId = partnerUser != null ? partnerUser.getCmId() : 396;
-            int empId = partnerUser != null ? partnerUser.getEmpId() : 396;
-
-            NLPDPrompt nlpdPrompt = new NLPDPrompt();
-            setPromptData(nlpdPrompt, cmId, empId, reqDto);
-            Thread promptSaveThread = new Thread(() -> NLPDPromptRepository.addPrompt(nlpdPrompt));
-            promptSaveThread.start();
-
-            OpenAiChatModel openAiModel = OpenAiChatModel.withApiKey(apiKey);
-            finalPrompt = getPromptForAI(cmId, reqDto);
-            String aiReply = openAiModel.generate(finalPrompt);
-            String finalSql = validateAIGeneratedSQL(cmId, aiReply);
-
-            log.info("FINAL-NLP-SQL: {}", finalSql);
-            System.out.println(finalSql);
-
-            List<LinkedHashMap<String, Object>> values = clickHouseRepository.findListOfDataFromSql(finalSql);
-
-            if (reqDto.getDashboardType().equalsIgnoreCase("text")) {
-                String textResp = openAiModel.generate("prompt: " + reqDto.getPrompt() +
-                        " data: " + JSONArray.fromObject(values).toString() +
-                        " for above prompt give me a detail text response in less than 120 words by analyzing the data ");
-                resp.setTextResponse(textResp);
+            permitFuture = tenantAdmissionController.acquire(cmId, cancelled::get);
+        } catch (KaptureException ke) {
+            sendSseError(emitter, ke.getBaseResponse());
+            return emitter;
+        }
+
+        NLPDPrompt nlpdPrompt = new NLPDPrompt();
+        setPromptData(nlpdPrompt, cmId, empId, reqDto);
+        CompletableFuture<Integer> promptIdFuture = savePrompt(nlpdPrompt);
+
+        DashboardPipeline.admitted(permitFuture, () -> requestCoalescer.execute(coalescingKey(cmId, reqDto, "data"), cancelled::get,
+                flightCancelled -> buildDashboardData(cmId, reqDto, Map.of(), flightCancelled)))
+                .thenCombine(promptIdFuture, this::withPromptId)
+                // sends block on the client and the summary waits for an llm permit, neither may hold up the thread completing the data
+                .whenCompleteAsync((resp, e) -> {
+                    if (e != null) {
+                        sendSseError(emitter, dashboardPipeline.toErrorResponse("generateNlpDashboardSse", e));
+                        return;
+                    }
+                    // tabular data goes out first, the summary follows token by token
+                    if (!sendSse(emitter, cancelled, SseEmitter.event().name("data").data(BaseResponse.success(resp).getBody()))) {
+                        return;
+                    }
+                    if (!reqDto.getDashboardType().equalsIgnoreCase("text")) {
+                        emitter.complete();
+                        return;
+                    }
+                    streamSummary(emitter, cancelled, reqDto, resp);
+                }, dashboardExecutors.getLlmExecutor())
+                .exceptionally(e -> {
+                    // a saturated llm executor never ran the handler above, the client still gets its error
+                    if (e.getCause() instanceof RejectedExecutionException) {
+                        sendSseError(emitter, dashboardPipeline.toErrorResponse("generateNlpDashboardSse", e));
+                    }
+                    return null;
+                });
+        return emitter;
+    }
+
+    public DeferredResult<ResponseEntity<?>> generateNlpDashboardBatch(List<NlpDashboardReqDto> reqDtos) {
+        PartnerUser partnerUser = SessionManager.getPartnerUser(httpServletRequest);
+        int cmId = partnerUser != null ? partnerUser.getCmId() : 396;
+        int empId = partnerUser != null ? partnerUser.getEmpId() : 396;
+
+        DeferredResult<ResponseEntity<?>> deferredResult = new DeferredResult<>(requestTimeoutMs,
+                BaseResponse.error(HttpStatus.GATEWAY_TIMEOUT, "Dashboard generation timed out, please retry!"));
+        AtomicBoolean cancelled = new AtomicBoolean();
+        deferredResult.onTimeout(() -> cancelled.set(true));
+        deferredResult.onError(e -> cancelled.set(true));
+
+        try {
+            validateBatch(reqDtos);
+        } catch (KaptureException ke) {
+            deferredResult.setResult(ke.getBaseResponse());
+            return deferredResult;
+        }
+
+        BatchWidgetResult[] results = new BatchWidgetResult[reqDtos.size()];
+        runBatch(cmId, empId, reqDtos, cancelled, result -> results[result.getIndex()] = result)
+                .thenApply(v -> (ResponseEntity<?>) BaseResponse.success(Arrays.asList(results)))
+                .exceptionally(e -> dashboardPipeline.toErrorResponse("generateNlpDashboardBatch", e))
+                .thenAccept(deferredResult::setResult);
+        return deferredResult;
+    }
+
+    public SseEmitter generateNlpDashboardBatchSse(List<NlpDashboardReqDto> reqDtos) {
+        PartnerUser partnerUser = SessionManager.getPartnerUser(httpServletRequest);
+        int cmId = partnerUser != null ? partnerUser.getCmId() : 396;
+        int empId = partnerUser != null ? partnerUser.getEmpId() : 396;
+
+        SseEmitter emitter = new SseEmitter(requestTimeoutMs);
+        AtomicBoolean cancelled = new AtomicBoolean();
+        emitter.onTimeout(() -> cancelled.set(true));
+        emitter.onError(e -> cancelled.set(true));
+
+        try {
+            validateBatch(reqDtos);
+        } catch (KaptureException ke) {
+            sendSseError(emitter, ke.getBaseResponse());
+            return emitter;
+        }
+
+        // each widget goes out as soon as it is ready, in completion order
+        runBatch(cmId, empId, reqDtos, cancelled, result -> sendSse(emitter, cancelled, SseEmitter.event().name("widget").data(result)))
+                .whenComplete((v, e) -> {
+                    if (e != null) {
+                        sendSseError(emitter, dashboardPipeline.toErrorResponse("generateNlpDashboardBatchSse", e));
+                    } else if (sendSse(emitter, cancelled, SseEmitter.event().name("complete").data(reqDtos.size()))) {
+                        emitter.complete();
+                    }
+                });
+        return emitter;
+    }
+
+    private void validateBatch(List<NlpDashboardReqDto> reqDtos) throws KaptureException {
+        if (reqDtos == null || reqDtos.isEmpty() || reqDtos.size() > batchMaxWidgets) {
+            throw new KaptureException(BaseResponse.error(HttpStatus.BAD_REQUEST, "A dashboard needs between 1 and " + batchMaxWidgets + " prompts!"));
+        }
+        for (NlpDashboardReqDto reqDto : reqDtos) {
+            if (reqDto == null || StringUtils.isBlank(reqDto.getPrompt()) || StringUtils.isBlank(reqDto.getDashboardType())) {
+                throw new KaptureException(BaseResponse.error(HttpStatus.BAD_REQUEST, "Every widget needs a prompt and a dashboardType!"));
             }
+        }
+    }
+
+    // schemas for the union of the widgets' tables are loaded once, then widgets run with at most batchMaxParallel in flight;
+    // every widget is admitted on its own, so a batch costs the tenant one token and one slot per widget like single requests
+    private CompletableFuture<Void> runBatch(int cmId, int empId, List<NlpDashboardReqDto> reqDtos, AtomicBoolean cancelled,
+                                             Consumer<BatchWidgetResult> onResult) {
+        return dashboardPipeline.schemaStage(cancelled::get, () -> loadBatchSchemas(reqDtos))
+                .exceptionally(e -> {
+                    log.warn("Batch schema preload failed, widgets load their own: {}", e.getMessage());
+                    return Map.of();
+                })
+                .thenCompose(schemas -> forEachLimited(reqDtos.size(), batchMaxParallel,
+                        index -> runWidget(cmId, empId, index, reqDtos.get(index), schemas, cancelled).thenAccept(onResult)));
+    }
 
-            if (!values.isEmpty()) {
-                resp.setDashboardColumns(values.get(0).keySet());
+    private Map<String, Object> loadBatchSchemas(List<NlpDashboardReqDto> reqDtos) throws KaptureException {
+        Set<String> tableNames = new LinkedHashSet<>();
+        for (NlpDashboardReqDto reqDto : reqDtos) {
+            try {
+                tableNames.addAll(nlpDashboardHelper.matchTables(reqDto.getPrompt(), reqDto.getDashboardType()));
+            } catch (KaptureException ke) {
+                // the widget reports its own unmatched prompt
             }
-            resp.setDashboardValues(values);
+        }
+        return tableNames.isEmpty() ? Map.of() : nlpDashboardHelper.loadSchemas(tableNames, BATCH_DASHBOARD);
+    }
 
-            promptSaveThread.join();
-            resp.setPromptId(nlpdPrompt.getId());
+    private CompletableFuture<BatchWidgetResult> runWidget(int cmId, int empId, int index, NlpDashboardReqDto reqDto,
+                                                           Map<String, Object> preloadedSchemas, AtomicBoolean cancelled) {
+        CompletableFuture<TenantAdmissionController.Permit> permitFuture;
+        try {
+            permitFuture = tenantAdmissionController.acquire(cmId, cancelled::get);
+        } catch (KaptureException ke) {
+            return CompletableFuture.completedFuture(toBatchWidgetResult(index, ke.getBaseResponse()));
+        }
 
-            return BaseResponse.success(resp);
+        NLPDPrompt nlpdPrompt = new NLPDPrompt();
+        setPromptData(nlpdPrompt, cmId, empId, reqDto);
+        CompletableFuture<Integer> promptIdFuture = savePrompt(nlpdPrompt);
+
+        return DashboardPipeline.admitted(permitFuture, () -> requestCoalescer.execute(coalescingKey(cmId, reqDto, "dashboard"), cancelled::get,
+                        flightCancelled -> buildDashboard(cmId, reqDto, preloadedSchemas, flightCancelled)))
+                .thenCombine(promptIdFuture, (resp, promptId) -> (ResponseEntity<?>) BaseResponse.success(withPromptId(resp, promptId)))
+                .exceptionally(e -> dashboardPipeline.toErrorResponse("generateNlpDashboardBatch", e))
+                .thenApply(response -> toBatchWidgetResult(index, response));
+    }
+
+    private static BatchWidgetResult toBatchWidgetResult(int index, ResponseEntity<?> response) {
+        return new BatchWidgetResult(index, response.getStatusCodeValue(), (BaseResponse.ResponseDto) response.getBody());
+    }
+
+    // a failed task does not stop the others, each worker picks the next index until none are left
+    private static CompletableFuture<Void> forEachLimited(int count, int parallelism, IntFunction<CompletableFuture<?>> task) {
+        AtomicInteger next = new AtomicInteger();
+        CompletableFuture<?>[] workers = new CompletableFuture<?>[Math.min(count, parallelism)];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = runNext(next, count, task);
+        }
+        return CompletableFuture.allOf(workers);
+    }
+
+    private static CompletableFuture<Void> runNext(AtomicInteger next, int count, IntFunction<CompletableFuture<?>> task) {
+        int index = next.getAndIncrement();
+        if (index >= count) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return task.apply(index).handle((result, e) -> null).thenCompose(v -> runNext(next, count, task));
+    }
+
+    private void streamSummary(SseEmitter emitter, AtomicBoolean cancelled, NlpDashboardReqDto reqDto, NlpDashboardResponse resp) {
+        try {
+            openAiModelManager.generateStreaming(getSummaryPrompt(reqDto, resp), new StreamingResponseHandler<AiMessage>() {
+                @Override
+                public void onNext(String token) {
+                    sendSse(emitter, cancelled, SseEmitter.event().name("token").data(token));
+                }
+
+                @Override
+                public void onComplete(Response<AiMessage> response) {
+                    if (sendSse(emitter, cancelled, SseEmitter.event().name("complete").data(response.content().text()))) {
+                        emitter.complete();
+                    }
+                }
+
+                @Override
+                public void onError(Throwable error) {
+                    log.error("Error in streamSummary", error);
+                    sendSseError(emitter, BaseResponse.error(HttpStatus.SERVICE_UNAVAILABLE, "AI service is not responding, please retry!"));
+                }
+            });
         } catch (KaptureException ke) {
-            log.warn("KaptureException in generateNlpDashboard" + ke.getBaseResponse());
-            return ke.getBaseResponse();
+            sendSseError(emitter, ke.getBaseResponse());
+        }
+    }
+
+    private boolean sendSse(SseEmitter emitter, AtomicBoolean cancelled, SseEmitter.SseEventBuilder event) {
+        if (cancelled.get()) {
+            return false;
+        }
+        try {
+            emitter.send(event);
+            return true;
         } catch (Exception e) {
-            e.printStackTrace();
-            System.out.println(finalPrompt);
-            log.error("Error in generateNlpDashboard", e);
-            return BaseResponse.error(e);
+            log.warn("Client disconnected from sse stream: {}", e.getMessage());
+            cancelled.set(true);
+            return false;
         }
     }
 
-    private void setPromptData(NLPDPrompt nlpdPrompt, int cmId, int empId, NlpDashboardReqDto reqDto) {
-        nlpdPrompt.setCmId(cmId);
-        nlpdPrompt.setPrompt(reqDto.getPrompt());
-        nlpdPrompt.setCreateTime(CommonUtils.getCurrentTimestamp());
-        nlpdPrompt.setEmpId(empId);
-        nlpdPrompt.setDashboardType(reqDto.getDashboardType());
+    private void sendSseError(SseEmitter emitter, ResponseEntity<?> error) {
+        try {
+            emitter.send(SseEmitter.event().name("error").data(error.getBody()));
+            emitter.complete();
+        } catch (Exception e) {
+            emitter.completeWithError(e);
+        }
+    }
+
+    private CompletableFuture<NlpDashboardResponse> buildDashboard(int cmId, NlpDashboardReqDto reqDto, Map<String, Object> preloadedSchemas,
+                                                                   BooleanSupplier cancelled) {
+        return buildDashboardData(cmId, reqDto, preloadedSchemas, cancelled)
+                .thenCompose(resp -> !reqDto.getDashboardType().equalsIgnoreCase("text")
+                        ? CompletableFuture.completedFuture(resp)
+                        : dashboardPipeline.llmStage(cancelled, () -> summarize(reqDto, resp)));
     }
 
+    private CompletableFuture<NlpDashboardResponse> buildDashboardData(int cmId, NlpDashboardReqDto reqDto, Map<String, Object> preloadedSchemas,
+                                                                       BooleanSupplier cancelled) {
+        return generateSql(cmId, reqDto, preloadedSchemas, maxRows, cancelled)
+                .thenCompose(generatedSql -> dashboardPipeline.clickHouseStage(cancelled, () -> executeSql(cmId, reqDto, generatedSql)));
+    }
 
-    private String validateAIGeneratedSQL(int cmId, String aiReply) throws KaptureException {
-        // todo validate reply, check for ``` or ```sql
-        String sql = aiReply.replaceAll("[\n;]", " ");
-        if (!(sql.trim().startsWith("SELECT") || sql.trim().startsWith("select"))) {
-            throw new KaptureException(BaseResponse.error(HttpStatus.UNPROCESSABLE_ENTITY, "Only select operation supported!"));
+    private CompletableFuture<String> generateAiReply(int cmId, NlpDashboardReqDto reqDto, SqlPlan sqlPlan, BooleanSupplier cancelled) {
+        if (sqlPlan.getSqlTemplate() != null) {
+            return CompletableFuture.completedFuture(PromptToSqlTemplateCache.bind(sqlPlan.getSqlTemplate(), cmId, reqDto));
         }
-        if (!(sql.contains("WHERE") || sql.contains("where"))) {
-            sql += " where cm_id = " + cmId;
-        } else if (sql.contains("WHERE") && !sql.split(" WHERE ")[1].contains("cm_id")
-                || sql.contains("where") && sql.split(" where ")[1].contains("cm_id")) {
-            sql = sql.replace("where", "where cm_id = " + cmId + " and ");
+        return dashboardPipeline.llmStage(cancelled,
+                () -> pipelineMetrics.time(PipelineMetrics.LLM_SQL, reqDto.getDashboardType(), () -> openAiModelManager.generate(sqlPlan.getPrompt())));
+    }
+
+    private NlpDashboardResponse executeSql(int cmId, NlpDashboardReqDto reqDto, GeneratedSql generatedSql) throws KaptureException {
+        String finalSql = generatedSql.getFinalSql();
+        log.info("FINAL-NLP-SQL: {}", finalSql);
+
+        int pageSize = dashboardPager.getPageSize(reqDto);
+        NlpDashboardResponse resp = new NlpDashboardResponse();
+        resp.setDashboardType(reqDto.getDashboardType());
+        // a paged table is always read through its ordered first page, never sliced from the unordered whole query;
+        // SQL without a deterministic order is run whole and its pages are sliced from that one result
+        String pageSql = pageSize > 0 ? sqlValidator.paginate(finalSql, 0, pageSize + 1) : null;
+        CachedQueryResult queryResult = queryResultCache.get(pageSql != null ? pageSql : finalSql);
+        resp.setFromCache(queryResult != null);
+        String executedSql = finalSql;
+        if (queryResult == null) {
+            QuerySettings querySettings = queryGuardrails.resolve(cmId, reqDto.getDashboardType(), dashboardPipeline.getClickHouseTimeoutMs());
+            QueryCostGuard.CheckedQuery checkedQuery = queryCostGuard.check(finalSql, reqDto.getDashboardType(), querySettings);
+            executedSql = checkedQuery.getSql();
+            // one extra row tells whether there is a next page
+            String executedPageSql = pageSql != null ? sqlValidator.paginate(executedSql, 0, pageSize + 1) : null;
+            String sql = executedPageSql != null ? executedPageSql : executedSql;
+            ColumnarResult columnarResult = pipelineMetrics.time(PipelineMetrics.CLICKHOUSE_EXECUTION, reqDto.getDashboardType(),
+                    () -> clickHouseRepository.findColumnarDataFromSql(sql, querySettings));
+            pipelineMetrics.recordQueryResult(reqDto.getDashboardType(), columnarResult.getRowCount(), columnarResult.estimateSizeBytes());
+            // every result is cached under the SQL that produced it, a whole result kept for paging even when sampled;
+            // other sampled results are served once
+            if (pageSize > 0 && executedPageSql == null) {
+                queryResult = queryResultCache.put(executedSql, columnarResult);
+            } else if (checkedQuery.isApproximate()) {
+                queryResult = queryResultCache.put(sql, columnarResult, 0);
+            } else {
+                queryResult = queryResultCache.put(sql, columnarResult);
+            }
+            resp.setApproximate(checkedQuery.isApproximate());
+            resp.setSampleRatio(checkedQuery.getSampleRatio());
+            schemaCompactor.recordSuccessfulSql(sqlValidator.findColumns(finalSql));
         }
-        if (!(sql.contains("LIMIT") || sql.contains("limit"))) {
-            sql += " LIMIT 5000";
+        resp.setDataAgeMillis(queryResult.getAgeMillis());
+        ColumnarResult result = queryResult.getResult();
+        cacheSqlTemplate(cmId, reqDto, generatedSql);
+
+        if (pageSize > 0) {
+            if (result.getRowCount() > pageSize) {
+                // the cursor needs the promptId, it is issued once the prompt is saved
+                resp.setPagedQuery(new PagedQuery(cmId, reqDto.getDashboardType(), finalSql, executedSql, pageSize, resp.getSampleRatio()));
+            }
+            result = result.slice(0, pageSize);
         }
-        return sql;
+        ColumnarResult pageResult = result;
+        return pipelineMetrics.time(PipelineMetrics.ROW_MAPPING, reqDto.getDashboardType(), () -> {
+            resp.putResult(chartDataReducer.reduce(reqDto.getDashboardType(), pageResult), reqDto.getResultFormat());
+            return resp;
+        });
     }
 
-    private String getPromptForAI(int cmId, NlpDashboardReqDto reqDto) throws KaptureException {
-        StringBuilder promptBuilder = new StringBuilder();
+    // identical requests of one tenant share a computation, each gets its own copy of the response to stamp its promptId on
+    private String coalescingKey(int cmId, NlpDashboardReqDto reqDto, String kind) {
+        return cmId + "|" + kind + "|" + PromptToSqlTemplateCache.buildKey(reqDto) + "|" + reqDto.getStartDate() + "|" + reqDto.getEndDate()
+                + "|" + StringUtils.lowerCase(reqDto.getResultFormat()) + "|" + dashboardPager.getPageSize(reqDto);
+    }
 
-        JSONObject dbSchema = nlpDashboardHelper.getRequiredDatabaseSchema(reqDto.getPrompt());
-        promptBuilder.append("\nPROMPT: ").append(reqDto.getPrompt());
-        promptBuilder.append("\nDATABASE SCHEMA (tableName to columnName to columnDataType mapping): ").append(dbSchema);
-        if (reqDto.getStartDate() != null && reqDto.getEndDate() != null) {
-            promptBuilder.append("\nDATE RANGE: ").append(ConversionUtil.getTimestampForSql(reqDto.getStartDate()))
-                    .append(" to ").append(ConversionUtil.getTimestampForSql(reqDto.getEndDate()));
+    private NlpDashboardResponse withPromptId(NlpDashboardResponse sharedResp, int promptId) {
+        NlpDashboardResponse resp = sharedResp.copy();
+        resp.setPromptId(promptId);
+        if (resp.getPagedQuery() != null && promptId > 0) {
+            resp.setNextCursor(dashboardPager.issueCursor(promptId, resp.getPagedQuery()));
         }
-        // Initial prompt instructions
-        promptBuilder.append("\nProvide a ClickHouse SQL query for PROMPT with correct syntax and proper table column names mentioned in DATABASE SCHEMA, to execute directly in ClickHouse.\n");
+        return resp;
+    }
+
+    public DeferredResult<ResponseEntity<?>> getDashboardPage(String cursor, String resultFormat) {
+        PartnerUser partnerUser = SessionManager.getPartnerUser(httpServletRequest);
+        int cmId = partnerUser != null ? partnerUser.getCmId() : 396;
 
-        // Conditionally add instructions based on dashboard type
-        if (reqDto.getDashboardType().equalsIgnoreCase("table") || reqDto.getDashboardType().equalsIgnoreCase("text")) {
-            promptBuilder.append("Select fewer than 15 essential columns.");
-        } else {
-            promptBuilder.append(
-                    " select required columns for making " + reqDto.getDashboardType() +
-                            ", adding alias names (" + NlpDashboardHelper.getAliasForChart(reqDto.getDashboardType()) + ") ie, like `column_name as alias`" +
-                            " column used for alias `value` must be a numeric datatype and type will be a meaningful name of the column used for alias `value`" +
-                            " also there can be multiple different type, hence value can be calculated based on type (like count of occurrence)"
-            );
-            //promptBuilder.append("\nEnsure sql logic is like `SELECT {column1_name} AS name, countIf({column2 condition}) AS value, 'count of the {column2 condition}' AS type FROM table_name group by {column2_name}` ");
-            //promptBuilder.append(" for creating a ").append(reqDto.getDashboardType()).append(" visualization.")
-            //        .append("\n sample query logic: `SELECT $column1 AS 'name', countIf(some condition) AS 'value', 'count of the condition' AS 'type' FROM table_name group by $column2`")
-            //        .append("\n update column1, column2, condition  in sample query with appropriate column names from table");
+        DeferredResult<ResponseEntity<?>> deferredResult = new DeferredResult<>(dashboardPipeline.getClickHouseTimeoutMs(),
+                BaseResponse.error(HttpStatus.GATEWAY_TIMEOUT, "Loading the page timed out, please retry!"));
+        PagedQueryCache.PageCursor pageCursor = PagedQueryCache.decodeCursor(cursor);
+        if (pageCursor == null) {
+            deferredResult.setResult(BaseResponse.error(HttpStatus.BAD_REQUEST, "Invalid cursor!"));
+            return deferredResult;
         }
+        AtomicBoolean cancelled = new AtomicBoolean();
+        deferredResult.onTimeout(() -> cancelled.set(true));
+        deferredResult.onError(e -> cancelled.set(true));
+
+        dashboardPipeline.clickHouseStage(cancelled::get, () -> dashboardPager.fetchPage(cmId, pageCursor, resultFormat))
+                .thenApply(resp -> (ResponseEntity<?>) BaseResponse.success(resp))
+                .exceptionally(e -> dashboardPipeline.toErrorResponse("getDashboardPage", e))
+                .thenAccept(deferredResult::setResult);
+        return deferredResult;
+    }
 
-        // Common instructions
-        promptBuilder.append("\nEnsure column names used are available in the DATABASE SCHEMA.");
-        promptBuilder.append(" Exclude selecting columns like 'id', 'cm_id', and foreign key columns.");
-        promptBuilder.append(" Include 'cm_id = ").append(cmId).append("' in the WHERE clause condition.");
-        promptBuilder.append(" Prefer sub queries over joins.");
+    private NlpDashboardResponse summarize(NlpDashboardReqDto reqDto, NlpDashboardResponse resp) throws KaptureException {
+        resp.setTextResponse(pipelineMetrics.time(PipelineMetrics.LLM_SUMMARY, reqDto.getDashboardType(),
+                () -> openAiModelManager.generate(getSummaryPrompt(reqDto, resp))));
+        return resp;
+    }
+
+    private static String getSummaryPrompt(NlpDashboardReqDto reqDto, NlpDashboardResponse resp) {
+        List<LinkedHashMap<String, Object>> values = resp.getDashboardValues() != null
+                ? resp.getDashboardValues() : resp.getColumnarValues().toRows();
+        return "prompt: " + reqDto.getPrompt() +
+                " data: " + JSONArray.fromObject(values).toString() +
+                " for above prompt give me a detail text response in less than 120 words by analyzing the data ";
+    }
+
+    private CompletableFuture<Integer> savePrompt(NLPDPrompt nlpdPrompt) {
+        return pipelineMetrics.timeAsync(PipelineMetrics.PROMPT_PERSISTENCE, nlpdPrompt.getDashboardType(), nlpdPromptBatchWriter.insert(nlpdPrompt));
+    }
+
+    public DeferredResult<ResponseEntity<StreamingResponseBody>> generateNlpDashboardStream(NlpDashboardReqDto reqDto) {
+        PartnerUser partnerUser = SessionManager.getPartnerUser(httpServletRequest);
+        int cmId = partnerUser != null ? partnerUser.getCmId() : 396;
+        int empId = partnerUser != null ? partnerUser.getEmpId() : 396;
+
+        DeferredResult<ResponseEntity<StreamingResponseBody>> deferredResult = new DeferredResult<>(requestTimeoutMs,
+                ndJsonDashboardStreamer.toStreamingError(BaseResponse.error(HttpStatus.GATEWAY_TIMEOUT, "Dashboard generation timed out, please retry!")));
+        if (!ndJsonDashboardStreamer.tryAcquireSlot()) {
+            log.warn("Stream slots exhausted, rejecting generateNlpDashboardStream");
+            deferredResult.setResult(ndJsonDashboardStreamer.toStreamingError(
+                    BaseResponse.error(HttpStatus.SERVICE_UNAVAILABLE, "Too many exports are running, please retry!")));
+            return deferredResult;
+        }
+        // the stream slot and the tenant's permit are held until the last row is written, or until it is clear no stream starts
+        CompletableFuture<Void> streamDone = new CompletableFuture<>();
+        streamDone.whenComplete((v, e) -> ndJsonDashboardStreamer.releaseSlot());
+        AtomicBoolean cancelled = new AtomicBoolean();
+        deferredResult.onTimeout(() -> cancelled.set(true));
+        deferredResult.onError(e -> cancelled.set(true));
+
+        CompletableFuture<TenantAdmissionController.Permit> permitFuture;
+        try {
+            permitFuture = tenantAdmissionController.acquire(cmId, cancelled::get);
+        } catch (KaptureException ke) {
+            streamDone.complete(null);
+            deferredResult.setResult(ndJsonDashboardStreamer.toStreamingError(ke.getBaseResponse()));
+            return deferredResult;
+        }
+        permitFuture.thenAccept(permit -> streamDone.whenComplete((v, e) -> permit.release()));
+
+        NLPDPrompt nlpdPrompt = new NLPDPrompt();
+        setPromptData(nlpdPrompt, cmId, empId, reqDto);
+        CompletableFuture<Integer> promptIdFuture = savePrompt(nlpdPrompt);
+
+        permitFuture.thenCompose(permit -> generateSql(cmId, reqDto, Map.of(), streamMaxRows, cancelled::get))
+                .thenCompose(generatedSql -> dashboardPipeline.clickHouseStage(cancelled::get, () -> checkStreamQuery(cmId, reqDto, generatedSql)))
+                .thenCombine(promptIdFuture, (streamQuery, promptId) -> ndJsonDashboardStreamer.toStreamingResponse(streamQuery.getCheckedQuery(),
+                        streamQuery.getQuerySettings(), promptId, reqDto.getDashboardType(),
+                        () -> cacheSqlTemplate(cmId, reqDto, streamQuery.getGeneratedSql()), () -> streamDone.complete(null)))
+                .exceptionally(e -> {
+                    streamDone.complete(null);
+                    return ndJsonDashboardStreamer.toStreamingError(dashboardPipeline.toErrorResponse("generateNlpDashboardStream", e));
+                })
+                .thenAccept(response -> {
+                    if (!deferredResult.setResult(response)) {
+                        streamDone.complete(null);
+                    }
+                });
+        return deferredResult;
+    }
+
+    private StreamQuery checkStreamQuery(int cmId, NlpDashboardReqDto reqDto, GeneratedSql generatedSql) throws KaptureException {
+        log.info("FINAL-NLP-STREAM-SQL: {}", generatedSql.getFinalSql());
+        // an export may run as long as its async request, ClickHouse stops the query there at the latest
+        QuerySettings querySettings = queryGuardrails.resolve(cmId, reqDto.getDashboardType(), streamTimeoutMs);
+        QueryCostGuard.CheckedQuery checkedQuery = queryCostGuard.check(generatedSql.getFinalSql(), reqDto.getDashboardType(), querySettings);
+        return new StreamQuery(generatedSql, querySettings, checkedQuery);
+    }
+
+    private CompletableFuture<GeneratedSql> generateSql(int cmId, NlpDashboardReqDto reqDto, Map<String, Object> preloadedSchemas, int maxRows,
+                                                        BooleanSupplier cancelled) {
+        return dashboardPipeline.schemaStage(cancelled, () -> prepareSqlPlan(cmId, reqDto, preloadedSchemas))
+                .thenCompose(sqlPlan -> generateAiReply(cmId, reqDto, sqlPlan, cancelled)
+                        .thenApply(aiReply -> DashboardPipeline.unchecked(() -> toGeneratedSql(cmId, reqDto, sqlPlan, aiReply, maxRows))));
+    }
+
+    private SqlPlan prepareSqlPlan(int cmId, NlpDashboardReqDto reqDto, Map<String, Object> preloadedSchemas) throws KaptureException {
+        String templateKey = PromptToSqlTemplateCache.buildKey(reqDto);
+        String sqlTemplate = promptToSqlTemplateCache.get(templateKey);
+        String prompt = sqlTemplate == null ? nlpPromptBuilder.buildSqlPrompt(cmId, reqDto, preloadedSchemas) : null;
+        return new SqlPlan(templateKey, sqlTemplate, prompt);
+    }
+
+    private GeneratedSql toGeneratedSql(int cmId, NlpDashboardReqDto reqDto, SqlPlan sqlPlan, String aiReply, int maxRows) throws KaptureException {
+        String finalSql = pipelineMetrics.time(PipelineMetrics.SQL_VALIDATION, reqDto.getDashboardType(), () -> sqlValidator.validate(cmId, aiReply, maxRows));
+        return new GeneratedSql(sqlPlan, aiReply, finalSql);
+    }
+
+    private void cacheSqlTemplate(int cmId, NlpDashboardReqDto reqDto, GeneratedSql generatedSql) {
+        if (!generatedSql.isFromTemplate()) {
+            promptToSqlTemplateCache.put(generatedSql.getSqlPlan().getTemplateKey(), cmId, reqDto, generatedSql.getAiReply());
+        }
+    }
+
+    private void setPromptData(NLPDPrompt nlpdPrompt, int cmId, int empId, NlpDashboardReqDto reqDto) {
+        nlpdPrompt.setCmId(cmId);
+        nlpdPrompt.setPrompt(reqDto.getPrompt());
+        nlpdPrompt.setCreateTime(CommonUtils.getCurrentTimestamp());
+        nlpdPrompt.setEmpId(empId);
+        nlpdPrompt.setDashboardType(reqDto.getDashboardType());
+    }
+
+
+    @Getter
+    @AllArgsConstructor
+    private static class SqlPlan {
+        private final String templateKey;
+        private final String sqlTemplate;
+        private final String prompt;
+    }
+
+    @Getter
+    @AllArgsConstructor
+    private static class GeneratedSql {
+        private final SqlPlan sqlPlan;
+        private final String aiReply;
+        private final String finalSql;
+
+        boolean isFromTemplate() {
+            return sqlPlan.getSqlTemplate() != null;
+        }
+    }
 
-        return promptBuilder.toString();
+    @Getter
+    @AllArgsConstructor
+    private static class StreamQuery {
+        private final GeneratedSql generatedSql;
+        private final QuerySettings querySettings;
+        private final QueryCostGuard.CheckedQuery checkedQuery;
     }
 
 }
@@ -1,6 +1,7 @@
 package com.kapture.nlpdashboardservice.utility;
 
 import lombok.Data;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
@@ -69,4 +70,12 @@ public class BaseResponse {
         return ResponseEntity.status(httpStatus).body(responseDto);
     }
 
+    public static ResponseEntity<ResponseDto> tooManyRequests(String message, long retryAfterSeconds) {
+        ResponseDto responseDto = new ResponseDto();
+        responseDto.setMessage(message);
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds))
+                .body(responseDto);
+    }
+
 }
@@ -1,5 +1,10 @@
 package com.kapture.nlpdashboardservice.utility;
 
+import com.kapture.nlpdashboardservice.cache.TableNameToSchemaCache;
+import com.kapture.nlpdashboardservice.component.PipelineMetrics;
+import com.kapture.nlpdashboardservice.component.SchemaCatalog;
+import com.kapture.nlpdashboardservice.component.SchemaCatalog.SchemaSnapshot;
+import com.kapture.nlpdashboardservice.component.SchemaCatalog.TableSchema;
 import com.kapture.nlpdashboardservice.repository.clickhouse.ClickHouseRepository;
 import com.kapture.nlpdashboardservice.exception.KaptureException;
 import lombok.RequiredArgsConstructor;
@@ -9,67 +14,81 @@ import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Component;
 
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
 
 @Component
 @RequiredArgsConstructor(onConstructor = @__(@Autowired))
 public class NlpDashboardHelper {
 
     private final ClickHouseRepository clickhouseRepository;
+    private final TableNameToSchemaCache tableNameToSchemaCache;
+    private final SchemaCatalog schemaCatalog;
+    private final PipelineMetrics pipelineMetrics;
 
-    private static HashSet<String> chTableNames = null;
-
-    private static final ExecutorService threadPool = Executors.newFixedThreadPool(5);
+    public JSONObject getRequiredDatabaseSchema(String prompt, String dashboardType) throws KaptureException {
+        return getRequiredDatabaseSchema(prompt, dashboardType, Map.of());
+    }
 
-    public JSONObject getRequiredDatabaseSchema(String prompt) throws KaptureException {
-        if (chTableNames == null) {
-            initializeTableNames();
-        }
+    /**
+     * Schema of the tables mentioned in the prompt, taken from preloadedSchemas where present, so a batch of
+     * prompts can resolve the union of its tables once with {@link #loadSchemas}.
+     */
+    public JSONObject getRequiredDatabaseSchema(String prompt, String dashboardType, Map<String, Object> preloadedSchemas) throws KaptureException {
+        Set<String> tableNames = matchTables(prompt, dashboardType);
+        List<String> missingTables = new ArrayList<>(tableNames);
+        missingTables.removeAll(preloadedSchemas.keySet());
+        Map<String, Object> loadedSchemas = missingTables.isEmpty() ? Map.of() : loadSchemas(missingTables, dashboardType);
         JSONObject dbSchema = new JSONObject();
-        List<Future<?>> futures = new ArrayList<>();
-        int tableCount = 0;
-        for (String promptPart : Set.of(prompt.split(" "))) {
-            promptPart = promptPart.toLowerCase().trim();
-            String tableName;
-            // check for singular as well plural for table name
-            if (chTableNames.contains(promptPart)) {
-                tableName = promptPart;
-            } else if (promptPart.endsWith("s") && chTableNames.contains(promptPart.substring(0, promptPart.length() - 1))) {
-                tableName = promptPart.substring(0, promptPart.length() - 1);
-            } else {
-                tableName = null;
-            }
-            if (tableName != null) {
-                futures.add(threadPool.submit(() -> clickhouseRepository.findDBTableSchema(tableName, dbSchema)));
-                tableCount++;
+        // keep the order the tables were mentioned in the prompt
+        for (String tableName : tableNames) {
+            Object schema = preloadedSchemas.containsKey(tableName) ? preloadedSchemas.get(tableName) : loadedSchemas.get(tableName);
+            if (schema != null) {
+                dbSchema.put(tableName, schema);
             }
         }
-        if (tableCount == 0) {
-            throw new KaptureException(BaseResponse.error(HttpStatus.UNPROCESSABLE_ENTITY, "Could not process the prompt!"));
-        }
-        waitForCompletion(futures);
         return dbSchema;
     }
 
-    private void initializeTableNames() {
-        chTableNames = new HashSet<>();
-        clickhouseRepository.findAllTableNames(chTableNames);
+    public Set<String> matchTables(String prompt, String dashboardType) throws KaptureException {
+        SchemaSnapshot snapshot = schemaCatalog.ensureLoaded();
+        Set<String> tableNames = pipelineMetrics.time(PipelineMetrics.TABLE_MATCHING, dashboardType,
+                () -> snapshot.getTableNameIndex().match(prompt));
+        if (tableNames.isEmpty()) {
+            throw new KaptureException(BaseResponse.error(HttpStatus.UNPROCESSABLE_ENTITY, "Could not process the prompt!"));
+        }
+        return tableNames;
     }
 
-    private static void waitForCompletion(List<Future<?>> futures) {
-        for (Future<?> future : futures) {
-            try {
-                future.get();
-            } catch (InterruptedException | ExecutionException e) {
-                throw new RuntimeException(e);
+    // table name -> schema text, tables that could not be loaded are left out
+    public Map<String, Object> loadSchemas(Collection<String> tableNames, String dashboardType) throws KaptureException {
+        SchemaSnapshot snapshot = schemaCatalog.ensureLoaded();
+        Map<String, Object> schemas = new HashMap<>();
+        // the catalog normally has every table; the shared cache only backs tables whose columns it failed to load
+        List<String> missingTables = new ArrayList<>();
+        for (String tableName : tableNames) {
+            TableSchema tableSchema = snapshot.getTable(tableName);
+            if (tableSchema != null && tableSchema.hasColumns()) {
+                schemas.put(tableName, tableSchema.getSchemaText());
+            } else {
+                missingTables.add(tableName);
             }
         }
+        pipelineMetrics.recordSchemaLookup(dashboardType, "catalog", schemas.size());
+        Map<String, String> cachedSchemas = missingTables.isEmpty() ? Map.of()
+                : pipelineMetrics.time(PipelineMetrics.SCHEMA_LOOKUP, dashboardType, () -> tableNameToSchemaCache.getAll(missingTables));
+        pipelineMetrics.recordSchemaLookup(dashboardType, "cache", cachedSchemas.size());
+        schemas.putAll(cachedSchemas);
+        missingTables.removeAll(cachedSchemas.keySet());
+        pipelineMetrics.recordSchemaLookup(dashboardType, "clickhouse", missingTables.size());
+        Map<String, JSONObject> loadedSchemas = missingTables.isEmpty() ? Map.of()
+                : pipelineMetrics.time(PipelineMetrics.SCHEMA_FETCH, dashboardType, () -> clickhouseRepository.findDBTableSchemas(missingTables));
+        loadedSchemas.forEach((tableName, schema) -> tableNameToSchemaCache.put(tableName, schema.toString()));
+        schemas.putAll(loadedSchemas);
+        return schemas;
     }
 
     public static String getAliasForChart(String chartType) {
@@ -0,0 +1,73 @@
+package com.kapture.nlpdashboardservice.utility;
+
+import com.kapture.nlpdashboardservice.component.PipelineMetrics;
+import com.kapture.nlpdashboardservice.component.SchemaCompactor;
+import com.kapture.nlpdashboardservice.dto.NlpDashboardReqDto;
+import com.kapture.nlpdashboardservice.exception.KaptureException;
+import lombok.RequiredArgsConstructor;
+import net.sf.json.JSONObject;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+@Component
+@RequiredArgsConstructor(onConstructor = @__(@Autowired))
+public class NlpPromptBuilder {
+
+    private final NlpDashboardHelper nlpDashboardHelper;
+    private final SchemaCompactor schemaCompactor;
+    private final PipelineMetrics pipelineMetrics;
+
+    public String buildSqlPrompt(int cmId, NlpDashboardReqDto reqDto) throws KaptureException {
+        return buildSqlPrompt(cmId, reqDto, Map.of());
+    }
+
+    public String buildSqlPrompt(int cmId, NlpDashboardReqDto reqDto, Map<String, Object> preloadedSchemas) throws KaptureException {
+        String prompt = pipelineMetrics.time(PipelineMetrics.PROMPT_ASSEMBLY, reqDto.getDashboardType(),
+                () -> assembleSqlPrompt(cmId, reqDto, preloadedSchemas));
+        pipelineMetrics.recordPromptSize(reqDto.getDashboardType(), prompt.length());
+        return prompt;
+    }
+
+    private String assembleSqlPrompt(int cmId, NlpDashboardReqDto reqDto, Map<String, Object> preloadedSchemas) throws KaptureException {
+        StringBuilder promptBuilder = new StringBuilder();
+
+        JSONObject dbSchema = nlpDashboardHelper.getRequiredDatabaseSchema(reqDto.getPrompt(), reqDto.getDashboardType(), preloadedSchemas);
+        promptBuilder.append("\nPROMPT: ").append(reqDto.getPrompt());
+        boolean hasDateRange = reqDto.getStartDate() != null && reqDto.getEndDate() != null;
+        SchemaCompactor.CompactedSchema schema = schemaCompactor.compact(reqDto.getPrompt(), dbSchema, hasDateRange);
+        promptBuilder.append("\nDATABASE SCHEMA (").append(schema.getFormat()).append("): ").append(schema.getText());
+        if (hasDateRange) {
+            promptBuilder.append("\nDATE RANGE: ").append(ConversionUtil.getTimestampForSql(reqDto.getStartDate()))
+                    .append(" to ").append(ConversionUtil.getTimestampForSql(reqDto.getEndDate()));
+        }
+        // Initial prompt instructions
+        promptBuilder.append("\nProvide a ClickHouse SQL query for PROMPT with correct syntax and proper table column names mentioned in DATABASE SCHEMA, to execute directly in ClickHouse.\n");
+
+        // Conditionally add instructions based on dashboard type
+        if (reqDto.getDashboardType().equalsIgnoreCase("table") || reqDto.getDashboardType().equalsIgnoreCase("text")) {
+            promptBuilder.append("Select fewer than 15 essential columns.");
+        } else {
+            promptBuilder.append(
+                    " select required columns for making " + reqDto.getDashboardType() +
+                            ", adding alias names (" + NlpDashboardHelper.getAliasForChart(reqDto.getDashboardType()) + ") ie, like `column_name as alias`" +
+                            " column used for alias `value` must be a numeric datatype and type will be a meaningful name of the column used for alias `value`" +
+                            " also there can be multiple different type, hence value can be calculated based on type (like count of occurrence)"
+            );
+            //promptBuilder.append("\nEnsure sql logic is like `SELECT {column1_name} AS name, countIf({column2 condition}) AS value, 'count of the {column2 condition}' AS type FROM table_name group by {column2_name}` ");
+            //promptBuilder.append(" for creating a ").append(reqDto.getDashboardType()).append(" visualization.")
+            //        .append("\n sample query logic: `SELECT $column1 AS 'name', countIf(some condition) AS 'value', 'count of the condition' AS 'type' FROM table_name group by $column2`")
+            //        .append("\n update column1, column2, condition  in sample query with appropriate column names from table");
+        }
+
+        // Common instructions
+        promptBuilder.append("\nEnsure column names used are available in the DATABASE SCHEMA.");
+        promptBuilder.append(" Exclude selecting columns like 'id', 'cm_id', and foreign key columns.");
+        promptBuilder.append(" Include 'cm_id = ").append(cmId).append("' in the WHERE clause condition.");
+        promptBuilder.append(" Prefer sub queries over joins.");
+
+        return promptBuilder.toString();
+    }
+
+}
@@ -0,0 +1,275 @@
+package com.kapture.nlpdashboardservice.utility;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Immutable lookup of ClickHouse table names from prompt words. A table is matched by its exact name,
+ * by a stemmed form ("tickets", "histories"), by consecutive words joined with "_" ("ticket history" ->
+ * ticket_history) or by a unique prefix of at least {@value #MIN_PREFIX_LENGTH} characters.
+ * <p>
+ * Lookups probe open-addressed tables directly with a reused buffer, so matching a word does not
+ * allocate a String.
+ */
+public final class TableNameIndex {
+
+    public static final TableNameIndex EMPTY = build(Set.of());
+
+    private static final int MIN_PREFIX_LENGTH = 5;
+    private static final int MAX_WORDS_PER_TABLE = 4;
+
+    private final KeyTable exactNames;
+    private final KeyTable stemmedNames;
+    private final String[] sortedNames;
+    private final int maxWords;
+
+    private TableNameIndex(KeyTable exactNames, KeyTable stemmedNames, String[] sortedNames, int maxWords) {
+        this.exactNames = exactNames;
+        this.stemmedNames = stemmedNames;
+        this.sortedNames = sortedNames;
+        this.maxWords = maxWords;
+    }
+
+    public static TableNameIndex build(Collection<String> tableNames) {
+        KeyTable exactNames = new KeyTable(tableNames.size());
+        KeyTable stemmedNames = new KeyTable(tableNames.size());
+        StringBuilder key = new StringBuilder();
+        int maxWords = 1;
+        for (String tableName : tableNames) {
+            String name = tableName.toLowerCase(Locale.ROOT);
+            exactNames.put(name, tableName);
+            int[] bounds = tokenize(name);
+            int words = bounds.length / 2;
+            if (words == 0 || words > MAX_WORDS_PER_TABLE) {
+                continue;
+            }
+            maxWords = Math.max(maxWords, words);
+            key.setLength(0);
+            for (int w = 0; w < words; w++) {
+                if (w > 0) {
+                    key.append('_');
+                }
+                appendStem(key, name, bounds[2 * w], bounds[2 * w + 1]);
+            }
+            stemmedNames.putIfAbsent(key.toString(), tableName);
+        }
+        String[] sortedNames = tableNames.stream().map(name -> name.toLowerCase(Locale.ROOT)).sorted().toArray(String[]::new);
+        return new TableNameIndex(exactNames, stemmedNames, sortedNames, maxWords);
+    }
+
+    public int size() {
+        return sortedNames.length;
+    }
+
+    /**
+     * Returns the tables mentioned in the prompt. Longer word sequences win, so "ticket history"
+     * resolves to ticket_history and not to ticket as well.
+     */
+    public Set<String> match(String prompt) {
+        Set<String> tables = new LinkedHashSet<>();
+        if (prompt == null || sortedNames.length == 0) {
+            return tables;
+        }
+        String text = prompt.toLowerCase(Locale.ROOT);
+        int[] bounds = tokenize(text);
+        int words = bounds.length / 2;
+        StringBuilder key = new StringBuilder(64);
+        int w = 0;
+        while (w < words) {
+            int matchedWords = 0;
+            for (int n = Math.min(maxWords, words - w); n >= 1 && matchedWords == 0; n--) {
+                String table = lookup(text, bounds, w, n, key);
+                if (table != null) {
+                    tables.add(table);
+                    matchedWords = n;
+                }
+            }
+            if (matchedWords == 0) {
+                String table = lookupPrefix(text, bounds[2 * w], bounds[2 * w + 1]);
+                if (table != null) {
+                    tables.add(table);
+                }
+                matchedWords = 1;
+            }
+            w += matchedWords;
+        }
+        return tables;
+    }
+
+    private String lookup(String text, int[] bounds, int firstWord, int words, StringBuilder key) {
+        key.setLength(0);
+        for (int w = firstWord; w < firstWord + words; w++) {
+            if (w > firstWord) {
+                key.append('_');
+            }
+            key.append(text, bounds[2 * w], bounds[2 * w + 1]);
+        }
+        String table = exactNames.get(key);
+        if (table != null) {
+            return table;
+        }
+        key.setLength(0);
+        for (int w = firstWord; w < firstWord + words; w++) {
+            if (w > firstWord) {
+                key.append('_');
+            }
+            appendStem(key, text, bounds[2 * w], bounds[2 * w + 1]);
+        }
+        return stemmedNames.get(key);
+    }
+
+    private String lookupPrefix(String text, int start, int end) {
+        if (end - start < MIN_PREFIX_LENGTH) {
+            return null;
+        }
+        int lo = 0;
+        int hi = sortedNames.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (compare(sortedNames[mid], text, start, end) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        int length = end - start;
+        if (lo >= sortedNames.length || !sortedNames[lo].regionMatches(0, text, start, length)) {
+            return null;
+        }
+        if (lo + 1 < sortedNames.length && sortedNames[lo + 1].regionMatches(0, text, start, length)) {
+            // ambiguous prefix, guessing would pull an unrelated schema into the prompt
+            return null;
+        }
+        return exactNames.get(sortedNames[lo]);
+    }
+
+    private static int compare(String name, String text, int start, int end) {
+        int length = Math.min(name.length(), end - start);
+        for (int i = 0; i < length; i++) {
+            int diff = name.charAt(i) - text.charAt(start + i);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return name.length() - (end - start);
+    }
+
+    /**
+     * Word boundaries as [start0, end0, start1, end1, ...]; anything other than a letter or digit separates words,
+     * so "ticket_history" and "ticket history" produce the same words.
+     */
+    private static int[] tokenize(String text) {
+        int[] bounds = new int[8];
+        int count = 0;
+        int i = 0;
+        int length = text.length();
+        while (i < length) {
+            while (i < length && !Character.isLetterOrDigit(text.charAt(i))) {
+                i++;
+            }
+            if (i == length) {
+                break;
+            }
+            int start = i;
+            while (i < length && Character.isLetterOrDigit(text.charAt(i))) {
+                i++;
+            }
+            if (count + 2 > bounds.length) {
+                bounds = Arrays.copyOf(bounds, bounds.length * 2);
+            }
+            bounds[count++] = start;
+            bounds[count++] = i;
+        }
+        return count == bounds.length ? bounds : Arrays.copyOf(bounds, count);
+    }
+
+    /**
+     * Light plural stemming: categories -> category, boxes/matches -> box/match, tickets -> ticket, status stays.
+     */
+    private static void appendStem(StringBuilder out, String text, int start, int end) {
+        int length = end - start;
+        if (length > 4 && text.startsWith("ies", end - 3)) {
+            out.append(text, start, end - 3).append('y');
+        } else if (length > 3 && text.startsWith("es", end - 2) && isSibilant(text, start, end - 2)) {
+            out.append(text, start, end - 2);
+        } else if (length > 3 && text.charAt(end - 1) == 's' && text.charAt(end - 2) != 's' && text.charAt(end - 2) != 'u') {
+            out.append(text, start, end - 1);
+        } else {
+            out.append(text, start, end);
+        }
+    }
+
+    private static boolean isSibilant(String text, int start, int end) {
+        char last = text.charAt(end - 1);
+        if (last == 'x') {
+            return true;
+        }
+        if (end - start < 2) {
+            return false;
+        }
+        char previous = text.charAt(end - 2);
+        // "classes" -> class but "cases" -> case, which the plain "s" rule handles
+        return (last == 's' && previous == 's') || (last == 'z' && previous == 'z') || (last == 'h' && (previous == 'c' || previous == 's'));
+    }
+
+    /**
+     * Open-addressed string table that can be probed with any CharSequence without copying it.
+     */
+    private static final class KeyTable {
+
+        private final String[] keys;
+        private final String[] values;
+        private final int mask;
+
+        KeyTable(int expectedSize) {
+            int capacity = Integer.highestOneBit(Math.max(4, expectedSize * 2) - 1) << 1;
+            this.keys = new String[capacity];
+            this.values = new String[capacity];
+            this.mask = capacity - 1;
+        }
+
+        void put(String key, String value) {
+            int slot = slotOf(key);
+            keys[slot] = key;
+            values[slot] = value;
+        }
+
+        void putIfAbsent(String key, String value) {
+            int slot = slotOf(key);
+            if (keys[slot] == null) {
+                keys[slot] = key;
+                values[slot] = value;
+            }
+        }
+
+        String get(CharSequence key) {
+            int slot = slotOf(key);
+            return keys[slot] == null ? null : values[slot];
+        }
+
+        private int slotOf(CharSequence key) {
+            int slot = spread(hash(key)) & mask;
+            while (keys[slot] != null && !keys[slot].contentEquals(key)) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        // same value as String.hashCode, computed without materializing the key
+        private static int hash(CharSequence key) {
+            int h = 0;
+            for (int i = 0; i < key.length(); i++) {
+                h = 31 * h + key.charAt(i);
+            }
+            return h;
+        }
+
+        private static int spread(int h) {
+            return h ^ (h >>> 16);
+        }
+    }
+
+}
@@ -0,0 +1,4 @@
+-- Serves the recent-prompts feed (cm_id = ? AND emp_id = ? ORDER BY create_time DESC LIMIT n)
+-- straight from the index on a cache miss, without a filesort.
+ALTER TABLE nlpd_prompt
+    ADD INDEX idx_nlpd_prompt_cm_emp_time (cm_id, emp_id, create_time);
@@ -0,0 +1,113 @@
+package com.kapture.nlpdashboardservice.cache;
+
+import com.kapture.nlpdashboardservice.dto.NlpDashboardReqDto;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.redisson.api.RedissonClient;
+
+import java.sql.Timestamp;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+class PromptToSqlTemplateCacheTest {
+
+    private static final int CM_ID = 42;
+
+    @Test
+    void bindsTimestampRangeBackToANewRange() {
+        String template = PromptToSqlTemplateCache.toTemplate("SELECT count() FROM tickets WHERE cm_id = 42"
+                + " AND created_at BETWEEN '2024-01-01 00:00:00' AND '2024-01-31 23:59:59'", CM_ID, range("2024-01-01", "2024-01-31"));
+
+        assertEquals("SELECT count() FROM tickets WHERE cm_id = 7"
+                        + " AND created_at BETWEEN '2024-03-01 00:00:00' AND '2024-03-31 23:59:59'",
+                PromptToSqlTemplateCache.bind(template, 7, range("2024-03-01", "2024-03-31")));
+    }
+
+    @Test
+    void bindsDayRange() {
+        String template = PromptToSqlTemplateCache.toTemplate("SELECT count() FROM tickets WHERE cm_id = 42"
+                + " AND toDate(created_at) BETWEEN '2024-01-01' AND '2024-01-31'", CM_ID, range("2024-01-01", "2024-01-31"));
+
+        assertEquals("SELECT count() FROM tickets WHERE cm_id = {{CM_ID}}"
+                + " AND toDate(created_at) BETWEEN '{{START_DAY}}' AND '{{END_DAY}}'", template);
+    }
+
+    @Test
+    void rejectsRangeWithOnlyOneEndBound() {
+        assertNull(PromptToSqlTemplateCache.toTemplate("SELECT count() FROM tickets WHERE cm_id = 42"
+                + " AND created_at >= '2024-01-01 00:00:00'", CM_ID, range("2024-01-01", "2024-01-31")));
+    }
+
+    @Test
+    void rejectsOtherDateFormats() {
+        assertNull(PromptToSqlTemplateCache.toTemplate("SELECT count() FROM tickets WHERE cm_id = 42"
+                + " AND created_at BETWEEN '01/01/2024' AND '31/01/2024'", CM_ID, range("2024-01-01", "2024-01-31")));
+        assertNull(PromptToSqlTemplateCache.toTemplate("SELECT count() FROM tickets WHERE cm_id = 42"
+                + " AND created_at >= '2024-01-01 00:00:00' AND created_at <= '2024/01/31'", CM_ID, range("2024-01-01", "2024-01-31")));
+    }
+
+    @Test
+    void rejectsRelativeTimeAlongsideTheRange() {
+        assertNull(PromptToSqlTemplateCache.toTemplate("SELECT count() FROM tickets WHERE cm_id = 42"
+                + " AND created_at >= now() - INTERVAL 30 DAY", CM_ID, range("2024-01-01", "2024-01-31")));
+        assertNull(PromptToSqlTemplateCache.toTemplate("SELECT count() FROM tickets WHERE cm_id = 42"
+                + " AND created_at BETWEEN '2024-01-01 00:00:00' AND '2024-01-31 23:59:59'"
+                + " AND updated_at > now() - INTERVAL 30 DAY", CM_ID, range("2024-01-01", "2024-01-31")));
+    }
+
+    @Test
+    void rejectsEpochSeconds() {
+        assertNull(PromptToSqlTemplateCache.toTemplate("SELECT count() FROM tickets WHERE cm_id = 42"
+                + " AND toUnixTimestamp(created_at) BETWEEN 1704067200 AND 1706745599", CM_ID, range("2024-01-01", "2024-01-31")));
+    }
+
+    @Test
+    void keepsRelativeTimeWithoutRange() {
+        assertNotNull(PromptToSqlTemplateCache.toTemplate("SELECT count() FROM tickets WHERE cm_id = 42"
+                + " AND created_at >= now() - INTERVAL 30 DAY", CM_ID, new NlpDashboardReqDto()));
+    }
+
+    @Test
+    void rejectsOtherTenantId() {
+        assertNull(PromptToSqlTemplateCache.toTemplate("SELECT count() FROM tickets WHERE cm_id = 43", CM_ID, new NlpDashboardReqDto()));
+    }
+
+    @Test
+    void matchesWholeTableNamesOnly() {
+        assertTrue(PromptToSqlTemplateCache.tableReference(List.of("tickets")).matcher("SELECT id FROM db.`tickets` t").find());
+        assertFalse(PromptToSqlTemplateCache.tableReference(List.of("tickets")).matcher("SELECT id FROM tickets_archive").find());
+        assertFalse(PromptToSqlTemplateCache.tableReference(List.of("tickets")).matcher("SELECT open_tickets FROM agents").find());
+    }
+
+    @Test
+    void invalidatesOnlyLocalTemplatesReadingTheTable() {
+        // redis calls fail on the mock and are logged, only the local tier is exercised
+        PromptToSqlTemplateCache cache = new PromptToSqlTemplateCache(mock(RedissonClient.class), new SimpleMeterRegistry(), 720, 100, 100);
+        NlpDashboardReqDto reqDto = new NlpDashboardReqDto();
+        cache.put("tickets", CM_ID, reqDto, "SELECT count() FROM tickets WHERE cm_id = 42");
+        cache.put("agents", CM_ID, reqDto, "SELECT count() FROM agents WHERE cm_id = 42");
+
+        cache.invalidateLocal("tickets");
+
+        assertNull(cache.get("tickets"));
+        assertEquals("SELECT count() FROM agents WHERE cm_id = {{CM_ID}}", cache.get("agents"));
+
+        cache.invalidateLocal("");
+
+        assertNull(cache.get("agents"));
+    }
+
+    private static NlpDashboardReqDto range(String startDay, String endDay) {
+        NlpDashboardReqDto reqDto = new NlpDashboardReqDto();
+        reqDto.setStartDate(Timestamp.valueOf(startDay + " 00:00:00"));
+        reqDto.setEndDate(Timestamp.valueOf(endDay + " 23:59:59"));
+        return reqDto;
+    }
+
+}
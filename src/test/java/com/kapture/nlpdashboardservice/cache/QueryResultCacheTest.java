@@ -0,0 +1,57 @@
+package com.kapture.nlpdashboardservice.cache;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kapture.nlpdashboardservice.dto.ColumnarResult;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.redisson.api.RedissonClient;
+
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+class QueryResultCacheTest {
+
+    private final QueryResultCache queryResultCache = new QueryResultCache(mock(RedissonClient.class),
+            new SimpleMeterRegistry(), new ObjectMapper(), 300, 16, true);
+
+    @Test
+    void roundTripsEveryVectorEncodingAsJson() throws Exception {
+        ColumnarResult result = new ColumnarResult(
+                List.of("status", "tickets", "agents", "avg_handle_time", "revenue"),
+                List.of("String", "UInt64", "UInt8", "Nullable(Float64)", "Decimal(38, 2)"),
+                2,
+                List.of(new ColumnarResult.DictionaryVector(new String[]{"open"}, new int[]{0, -1}),
+                        new ColumnarResult.DecimalVector(new String[]{"18446744073709551615", "1"}),
+                        new ColumnarResult.IntVector(new int[]{3, 4}, new int[0]),
+                        new ColumnarResult.DoubleVector(new double[]{1.5, 0}, new int[]{1}),
+                        new ColumnarResult.DecimalVector(new String[]{"12345678901234567890.12", null})));
+        CachedQueryResult cached = new CachedQueryResult(1000L, 2000L, result);
+
+        CachedQueryResult read = queryResultCache.decompress(queryResultCache.compress(cached));
+
+        assertEquals(1000L, read.getCreateTime());
+        assertEquals(2000L, read.getExpireTime());
+        assertEquals(result.getColumns(), read.getResult().getColumns());
+        assertEquals(result.getColumnTypes(), read.getResult().getColumnTypes());
+        assertEquals(result.toRows(), read.getResult().toRows());
+        assertTrue(read.getResult().getData().get(3).isNull(1));
+    }
+
+    @Test
+    void doesNotReadJavaSerializedEntries() throws Exception {
+        // gzipped java serialization stream header: magic 0xACED, version 5, TC_OBJECT, TC_CLASSDESC
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(bos)) {
+            gzip.write(new byte[]{(byte) 0xAC, (byte) 0xED, 0x00, 0x05, 0x73, 0x72});
+        }
+
+        assertThrows(Exception.class, () -> queryResultCache.decompress(bos.toByteArray()));
+    }
+
+}
@@ -0,0 +1,87 @@
+package com.kapture.nlpdashboardservice.component;
+
+import com.kapture.nlpdashboardservice.dto.ColumnarResult;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class ChartDataReducerTest {
+
+    private final ChartDataReducer chartDataReducer = new ChartDataReducer(true, 3, 3, 25, new SimpleMeterRegistry());
+
+    @Test
+    void sumsRowsWithTheSameNameAndType() {
+        ColumnarResult result = new ColumnarResult(List.of("name", "type", "value"), List.of("String", "String", "UInt64"), 3,
+                List.of(new ColumnarResult.DictionaryVector(new String[]{"Mon", "Tue"}, new int[]{0, 1, 0}),
+                        new ColumnarResult.DictionaryVector(new String[]{"open"}, new int[]{0, 0, 0}),
+                        new ColumnarResult.LongVector(new long[]{1, 2, 3}, new int[0])));
+
+        List<LinkedHashMap<String, Object>> rows = chartDataReducer.reduce("bar", result).toRows();
+
+        assertEquals(List.of("Mon", "Tue"), column(rows, "name"));
+        assertEquals(List.of("4", "2"), column(rows, "value"));
+    }
+
+    @Test
+    void foldsDonutTailIntoOther() {
+        ColumnarResult result = new ColumnarResult(List.of("name", "value"), List.of("String", "Float64"), 5,
+                List.of(new ColumnarResult.DictionaryVector(new String[]{"a", "b", "c", "d", "e"}, new int[]{0, 1, 2, 3, 4}),
+                        new ColumnarResult.DoubleVector(new double[]{5, 1, 4, 2, 3}, new int[0])));
+
+        List<LinkedHashMap<String, Object>> rows = chartDataReducer.reduce("donut", result).toRows();
+
+        assertEquals(List.of("a", "c", "Other"), column(rows, "name"));
+        assertEquals(List.of("5.0", "4.0", "6.0"), column(rows, "value"));
+    }
+
+    @Test
+    void foldsDonutTailIntoAKeptOtherCategory() {
+        ColumnarResult result = new ColumnarResult(List.of("name", "value"), List.of("String", "Float64"), 5,
+                List.of(new ColumnarResult.DictionaryVector(new String[]{"a", "Other", "c", "d", "e"}, new int[]{0, 1, 2, 3, 4}),
+                        new ColumnarResult.DoubleVector(new double[]{5, 4, 1, 2, 3}, new int[0])));
+
+        List<LinkedHashMap<String, Object>> rows = chartDataReducer.reduce("donut", result).toRows();
+
+        assertEquals(List.of("a", "Other"), column(rows, "name"));
+        assertEquals(List.of("5.0", "10.0"), column(rows, "value"));
+    }
+
+    @Test
+    void downsamplesLineSeriesKeepingEndsAndPeak() {
+        long[] x = new long[10];
+        long[] y = new long[10];
+        for (int i = 0; i < x.length; i++) {
+            x[i] = i;
+        }
+        y[5] = 100;
+        ColumnarResult result = new ColumnarResult(List.of("name", "value"), List.of("UInt32", "UInt64"), 10,
+                List.of(new ColumnarResult.LongVector(x, new int[0]), new ColumnarResult.LongVector(y, new int[0])));
+
+        List<LinkedHashMap<String, Object>> rows = chartDataReducer.reduce("line", result).toRows();
+
+        assertEquals(List.of("0", "5", "9"), column(rows, "name"));
+        assertArrayEquals(new int[]{0, 5, 9}, ChartDataReducer.largestTriangleThreeBuckets(new double[]{0, 1, 2, 3, 4, 5, 6, 7, 8, 9},
+                new double[]{0, 0, 0, 0, 0, 100, 0, 0, 0, 0}, 3));
+    }
+
+    @Test
+    void passesTablesThrough() {
+        ColumnarResult result = new ColumnarResult(List.of("name", "value"), List.of("String", "UInt64"), 2,
+                List.of(new ColumnarResult.DictionaryVector(new String[]{"a"}, new int[]{0, 0}),
+                        new ColumnarResult.LongVector(new long[]{1, 2}, new int[0])));
+
+        assertSame(result, chartDataReducer.reduce("table", result));
+    }
+
+    private static List<Object> column(List<LinkedHashMap<String, Object>> rows, String column) {
+        return rows.stream().map(row -> row.get(column)).collect(Collectors.toList());
+    }
+
+}
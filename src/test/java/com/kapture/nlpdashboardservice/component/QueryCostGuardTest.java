@@ -0,0 +1,86 @@
+package com.kapture.nlpdashboardservice.component;
+
+import com.kapture.nlpdashboardservice.dto.QueryEstimate;
+import com.kapture.nlpdashboardservice.dto.QuerySettings;
+import com.kapture.nlpdashboardservice.dto.TableMetadata;
+import com.kapture.nlpdashboardservice.exception.KaptureException;
+import com.kapture.nlpdashboardservice.repository.clickhouse.ClickHouseRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class QueryCostGuardTest {
+
+    private ClickHouseRepository clickHouseRepository;
+    private QueryCostGuard queryCostGuard;
+
+    @BeforeEach
+    void setUp() {
+        clickHouseRepository = mock(ClickHouseRepository.class);
+        SchemaCatalog schemaCatalog = mock(SchemaCatalog.class);
+        when(schemaCatalog.getSnapshot()).thenReturn(new SchemaCatalog.SchemaSnapshot(1, Map.of("tickets",
+                SchemaCatalog.TableSchema.of(new TableMetadata("tickets", 0, "intHash32(id)"), null))));
+        queryCostGuard = new QueryCostGuard(clickHouseRepository, schemaCatalog, new SimpleMeterRegistry(), true, 1_000_000, 0.01);
+    }
+
+    @Test
+    void acceptsQueriesUnderTheLimit() throws KaptureException {
+        estimate(500_000);
+
+        QueryCostGuard.CheckedQuery checked = queryCostGuard.check("SELECT count() FROM tickets", "text", QuerySettings.NONE);
+
+        assertFalse(checked.isApproximate());
+        assertEquals("SELECT count() FROM tickets", checked.getSql());
+    }
+
+    @Test
+    void samplesRowListingForTableDashboards() throws KaptureException {
+        estimate(4_000_000);
+
+        QueryCostGuard.CheckedQuery checked = queryCostGuard.check("SELECT id, status FROM tickets WHERE priority = 'high' LIMIT 5000",
+                "table", QuerySettings.NONE);
+
+        assertTrue(checked.isApproximate());
+        assertEquals(0.25, checked.getSampleRatio());
+        assertTrue(checked.getSql().contains("FROM tickets SAMPLE 0.2500 WHERE"), checked.getSql());
+    }
+
+    @Test
+    void rejectsAggregatingQueriesInsteadOfSampling() {
+        estimate(4_000_000);
+
+        assertRejected("SELECT count() FROM tickets", "table");
+        assertRejected("SELECT status, count() FROM tickets GROUP BY status", "table");
+        assertRejected("SELECT sumIf(amount, status = 'paid') AS paid FROM tickets", "table");
+        assertRejected("SELECT DISTINCT status FROM tickets", "table");
+        assertRejected("SELECT id, row_number() OVER (ORDER BY id) FROM tickets", "table");
+    }
+
+    @Test
+    void rejectsOtherDashboardTypesInsteadOfSampling() {
+        estimate(4_000_000);
+
+        assertRejected("SELECT id, status FROM tickets", "bar");
+    }
+
+    private void estimate(long rows) {
+        when(clickHouseRepository.explainEstimate(anyString())).thenReturn(new QueryEstimate(Map.of("tickets", rows), 10));
+    }
+
+    private void assertRejected(String sql, String dashboardType) {
+        KaptureException e = assertThrows(KaptureException.class, () -> queryCostGuard.check(sql, dashboardType, QuerySettings.NONE));
+        assertEquals(HttpStatus.UNPROCESSABLE_ENTITY, e.getBaseResponse().getStatusCode());
+    }
+
+}
@@ -0,0 +1,69 @@
+package com.kapture.nlpdashboardservice.component;
+
+import com.kapture.nlpdashboardservice.config.QueryGuardrailProperties;
+import com.kapture.nlpdashboardservice.dto.QuerySettings;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class QueryGuardrailsTest {
+
+    private QueryGuardrailProperties properties;
+    private QueryGuardrails queryGuardrails;
+
+    @BeforeEach
+    void setUp() {
+        properties = new QueryGuardrailProperties();
+        properties.getDefaults().setMaxExecutionTimeSeconds(30);
+        properties.getDefaults().setMaxRowsToRead(500_000_000L);
+        properties.getDashboardTypes().put("text", limits(20, null));
+        properties.getTiers().put("premium", limits(55, 2_000_000_000L));
+        properties.setTenantTiers(Map.of(7, "premium"));
+        queryGuardrails = new QueryGuardrails(properties);
+    }
+
+    @Test
+    void tierOverridesDashboardTypeWhichOverridesDefaults() {
+        assertEquals(30, queryGuardrails.resolve(1, "table").getSettings().get("max_execution_time"));
+        assertEquals(20, queryGuardrails.resolve(1, "TEXT").getSettings().get("max_execution_time"));
+        QuerySettings premium = queryGuardrails.resolve(7, "text");
+        assertEquals(55, premium.getSettings().get("max_execution_time"));
+        assertEquals(2_000_000_000L, premium.getSettings().get("max_rows_to_read"));
+    }
+
+    @Test
+    void leavesResultRowCapToTheOuterLimit() {
+        Map<String, Object> settings = queryGuardrails.resolve(7, "table").getSettings();
+
+        assertFalse(settings.containsKey("max_result_rows"));
+        assertFalse(settings.containsKey("result_overflow_mode"));
+    }
+
+    @Test
+    void lowersMaxExecutionTimeToTheStageBudget() {
+        assertEquals(20L, queryGuardrails.resolve(1, "table", 20_000).getSettings().get("max_execution_time"));
+        assertEquals(30, queryGuardrails.resolve(1, "table", 60_000).getSettings().get("max_execution_time"));
+        assertEquals(1L, queryGuardrails.resolve(1, "table", 500).getSettings().get("max_execution_time"));
+        assertEquals(500_000_000L, queryGuardrails.resolve(1, "table", 20_000).getSettings().get("max_rows_to_read"));
+    }
+
+    @Test
+    void disabledGuardrailsSendNoSettings() {
+        properties.setEnabled(false);
+
+        assertSame(QuerySettings.NONE, queryGuardrails.resolve(7, "table"));
+    }
+
+    private static QueryGuardrailProperties.Limits limits(Integer maxExecutionTimeSeconds, Long maxRowsToRead) {
+        QueryGuardrailProperties.Limits limits = new QueryGuardrailProperties.Limits();
+        limits.setMaxExecutionTimeSeconds(maxExecutionTimeSeconds);
+        limits.setMaxRowsToRead(maxRowsToRead);
+        return limits;
+    }
+
+}
@@ -0,0 +1,78 @@
+package com.kapture.nlpdashboardservice.component;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RequestCoalescerTest {
+
+    private final RequestCoalescer requestCoalescer = new RequestCoalescer(new SimpleMeterRegistry(), true);
+    private final AtomicInteger computations = new AtomicInteger();
+    private final CompletableFuture<String> pending = new CompletableFuture<>();
+    private final AtomicReference<BooleanSupplier> sharedCancelled = new AtomicReference<>();
+
+    @Test
+    void identicalRequestsShareOneComputation() {
+        CompletableFuture<String> leader = requestCoalescer.execute("key", () -> false, this::compute);
+        CompletableFuture<String> follower = requestCoalescer.execute("key", () -> false, this::compute);
+
+        assertEquals(1, computations.get());
+        pending.complete("result");
+        assertEquals("result", leader.join());
+        assertEquals("result", follower.join());
+
+        requestCoalescer.execute("key", () -> false, this::compute);
+        assertEquals(2, computations.get());
+    }
+
+    @Test
+    void differentKeysRunSeparately() {
+        requestCoalescer.execute("key", () -> false, this::compute);
+        requestCoalescer.execute("other", () -> false, this::compute);
+
+        assertEquals(2, computations.get());
+    }
+
+    @Test
+    void sharedComputationIsCancelledOnlyOnceEveryWaiterLeft() {
+        AtomicBoolean leaderCancelled = new AtomicBoolean();
+        AtomicBoolean followerCancelled = new AtomicBoolean();
+        requestCoalescer.execute("key", leaderCancelled::get, this::compute);
+        requestCoalescer.execute("key", followerCancelled::get, this::compute);
+
+        leaderCancelled.set(true);
+        assertFalse(sharedCancelled.get().getAsBoolean());
+        followerCancelled.set(true);
+        assertTrue(sharedCancelled.get().getAsBoolean());
+
+        requestCoalescer.execute("key", () -> false, this::compute);
+        assertEquals(2, computations.get());
+    }
+
+    @Test
+    void failurePropagatesToEveryWaiter() {
+        CompletableFuture<String> leader = requestCoalescer.execute("key", () -> false, this::compute);
+        CompletableFuture<String> follower = requestCoalescer.execute("key", () -> false, this::compute);
+
+        pending.completeExceptionally(new IllegalStateException("boom"));
+
+        assertTrue(leader.isCompletedExceptionally());
+        assertTrue(follower.isCompletedExceptionally());
+    }
+
+    private CompletableFuture<String> compute(BooleanSupplier cancelled) {
+        computations.incrementAndGet();
+        sharedCancelled.compareAndSet(null, cancelled);
+        return pending;
+    }
+
+}
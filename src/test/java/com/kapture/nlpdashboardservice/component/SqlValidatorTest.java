@@ -0,0 +1,196 @@
+package com.kapture.nlpdashboardservice.component;
+
+import com.kapture.nlpdashboardservice.exception.KaptureException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SqlValidatorTest {
+
+    private static final int CM_ID = 42;
+    private static final int MAX_ROWS = 5000;
+
+    private SqlValidator sqlValidator;
+
+    @BeforeEach
+    void setUp() {
+        sqlValidator = new SqlValidator(100, new SimpleMeterRegistry());
+    }
+
+    @Test
+    void scopesSingleTableAndAddsLimit() throws KaptureException {
+        String sql = validate("SELECT status, count() FROM tickets WHERE priority = 'high' GROUP BY status");
+
+        assertTrue(sql.contains("WHERE tickets.cm_id = 42 AND (priority = 'high')"), sql);
+        assertTrue(sql.endsWith("LIMIT 5000"), sql);
+    }
+
+    @Test
+    void stripsMarkdownFenceAndSemicolon() throws KaptureException {
+        String sql = validate("```sql\nSELECT id FROM tickets;\n```");
+
+        assertEquals("SELECT id FROM tickets WHERE tickets.cm_id = 42 LIMIT 5000", sql);
+    }
+
+    @Test
+    void keepsSmallerLimitAndClampsLargerOne() throws KaptureException {
+        assertTrue(validate("SELECT id FROM tickets LIMIT 10").endsWith("LIMIT 10"));
+        assertTrue(validate("SELECT id FROM tickets LIMIT 100000").endsWith("LIMIT 5000"));
+    }
+
+    @Test
+    void scopesNestedSubqueryInFrom() throws KaptureException {
+        String sql = validate("SELECT s, count() FROM (SELECT status AS s FROM tickets WHERE priority = 'high') sub GROUP BY s");
+
+        assertTrue(sql.contains("FROM tickets WHERE tickets.cm_id = 42 AND (priority = 'high')"), sql);
+        assertEquals(1, countPredicates(sql), sql);
+    }
+
+    @Test
+    void scopesCteBodyButNotCteReference() throws KaptureException {
+        String sql = validate("WITH open_tickets AS (SELECT id FROM tickets WHERE status = 'open') SELECT count() FROM open_tickets");
+
+        assertTrue(sql.contains("tickets.cm_id = 42 AND (status = 'open')"), sql);
+        assertFalse(sql.contains("open_tickets.cm_id"), sql);
+    }
+
+    @Test
+    void scopesEveryBranchOfUnion() throws KaptureException {
+        String sql = validate("SELECT id FROM tickets UNION ALL SELECT id FROM call_log");
+
+        assertTrue(sql.contains("FROM tickets WHERE tickets.cm_id = 42"), sql);
+        assertTrue(sql.contains("FROM call_log WHERE call_log.cm_id = 42"), sql);
+    }
+
+    @Test
+    void scopesJoinedTableInOnClause() throws KaptureException {
+        String sql = validate("SELECT t.id, a.name FROM tickets t LEFT JOIN agents a ON t.agent_id = a.id");
+
+        assertTrue(sql.contains("ON a.cm_id = 42 AND (t.agent_id = a.id)"), sql);
+        assertTrue(sql.contains("WHERE t.cm_id = 42"), sql);
+    }
+
+    @Test
+    void scopesInSubquery() throws KaptureException {
+        String sql = validate("SELECT id FROM tickets WHERE agent_id IN (SELECT id FROM agents WHERE team = 'sales')");
+
+        assertTrue(sql.contains("FROM agents WHERE agents.cm_id = 42 AND (team = 'sales')"), sql);
+        assertTrue(sql.contains("WHERE tickets.cm_id = 42"), sql);
+    }
+
+    @Test
+    void scopesSubqueriesInEveryExpressionPosition() throws KaptureException {
+        String sql = validate("SELECT status, (SELECT count() FROM agents) AS agent_count FROM tickets"
+                + " GROUP BY status, agent_id IN (SELECT id FROM escalations)"
+                + " HAVING count() > (SELECT avg(total) FROM ticket_summary)"
+                + " ORDER BY (SELECT max(id) FROM call_log)");
+
+        assertTrue(sql.contains("FROM agents WHERE agents.cm_id = 42"), sql);
+        assertTrue(sql.contains("FROM escalations WHERE escalations.cm_id = 42"), sql);
+        assertTrue(sql.contains("FROM ticket_summary WHERE ticket_summary.cm_id = 42"), sql);
+        assertTrue(sql.contains("FROM call_log WHERE call_log.cm_id = 42"), sql);
+        assertTrue(sql.contains("FROM tickets WHERE tickets.cm_id = 42"), sql);
+    }
+
+    @Test
+    void rejectsTableFunctionInFrom() {
+        assertRejected("SELECT * FROM remote('127.0.0.1:9000', default.tickets)");
+    }
+
+    @Test
+    void rejectsTableFunctionInJoin() {
+        assertRejected("SELECT t.id FROM tickets t JOIN url('http://host/data.csv', 'CSV', 'id UInt64') u ON t.id = u.id");
+    }
+
+    @Test
+    void rejectsTableFunctionInSubquery() {
+        assertRejected("SELECT id FROM tickets WHERE id IN (SELECT id FROM s3('https://bucket/tickets.csv'))");
+    }
+
+    @Test
+    void rejectsUnparseableSql() {
+        assertRejected("SELECT id FROM tickets WHERE");
+        assertRejected("this is not sql");
+    }
+
+    @Test
+    void rejectsMultipleStatementsAndNonSelect() {
+        assertRejected("SELECT id FROM tickets; SELECT id FROM agents");
+        assertRejected("DELETE FROM tickets WHERE id = 1");
+    }
+
+    @Test
+    void paginatesByEverySelectedColumn() {
+        assertEquals("SELECT status, count() AS c FROM tickets WHERE tickets.cm_id = 42 GROUP BY status ORDER BY status, c LIMIT 100, 51",
+                sqlValidator.paginate("SELECT status, count() AS c FROM tickets WHERE tickets.cm_id = 42 GROUP BY status LIMIT 5000", 100, 51));
+    }
+
+    @Test
+    void keepsExistingOrderAndBreaksTiesWithSelectedColumns() {
+        String sql = sqlValidator.paginate("SELECT status, count() AS c FROM tickets GROUP BY status ORDER BY c DESC LIMIT 5000", 0, 11);
+
+        assertTrue(sql.endsWith("ORDER BY c DESC, status LIMIT 0, 11"), sql);
+    }
+
+    @Test
+    void pagesWithinExistingLimitAndOffset() {
+        assertTrue(sqlValidator.paginate("SELECT id FROM tickets ORDER BY id LIMIT 20, 100", 90, 11).endsWith("LIMIT 110, 10"));
+        String sql = sqlValidator.paginate("SELECT id FROM tickets ORDER BY id LIMIT 100 OFFSET 20", 90, 11);
+        assertTrue(sql.endsWith("LIMIT 110, 10"), sql);
+        assertFalse(sql.contains("OFFSET"), sql);
+        assertTrue(sqlValidator.paginate("SELECT id FROM tickets ORDER BY id LIMIT 100", 100, 11).endsWith("LIMIT 100, 0"));
+    }
+
+    @Test
+    void doesNotPaginateWithoutDeterministicOrder() {
+        assertNull(sqlValidator.paginate("SELECT * FROM tickets LIMIT 5000", 0, 11));
+        assertNull(sqlValidator.paginate("SELECT id FROM tickets UNION ALL SELECT id FROM call_log LIMIT 5000", 0, 11));
+        assertNull(sqlValidator.paginate("SELECT id FROM tickets WHERE", 0, 11));
+    }
+
+    @Test
+    void findsColumnsOfTheTableTheyAreReadFrom() {
+        assertEquals(Map.of("tickets", Set.of("status", "priority")),
+                sqlValidator.findColumns("SELECT status, count() AS total FROM tickets WHERE priority = 'high' GROUP BY status ORDER BY total"));
+    }
+
+    @Test
+    void findsQualifiedColumnsThroughTableAliases() {
+        Map<String, Set<String>> columns = sqlValidator.findColumns("SELECT t.status, a.name FROM tickets t"
+                + " JOIN agents a ON t.agent_id = a.id WHERE created_at > now()");
+
+        assertEquals(Map.of("tickets", Set.of("status", "agent_id"), "agents", Set.of("name", "id")), columns);
+    }
+
+    @Test
+    void findsColumnsOfNestedSelectsInTheirOwnScope() {
+        Map<String, Set<String>> columns = sqlValidator.findColumns("SELECT status FROM tickets WHERE agent_id IN"
+                + " (SELECT id FROM agents WHERE team = 'sales')");
+
+        assertEquals(Map.of("tickets", Set.of("status", "agent_id"), "agents", Set.of("id", "team")), columns);
+    }
+
+    private String validate(String aiReply) throws KaptureException {
+        return sqlValidator.validate(CM_ID, aiReply, MAX_ROWS);
+    }
+
+    private void assertRejected(String aiReply) {
+        KaptureException e = assertThrows(KaptureException.class, () -> validate(aiReply));
+        assertEquals(HttpStatus.UNPROCESSABLE_ENTITY, e.getBaseResponse().getStatusCode());
+    }
+
+    private static int countPredicates(String sql) {
+        return sql.split("cm_id = 42", -1).length - 1;
+    }
+
+}
@@ -0,0 +1,118 @@
+package com.kapture.nlpdashboardservice.component;
+
+import com.kapture.nlpdashboardservice.config.QueryGuardrailProperties;
+import com.kapture.nlpdashboardservice.config.TenantAdmissionProperties;
+import com.kapture.nlpdashboardservice.exception.KaptureException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TenantAdmissionControllerTest {
+
+    private TenantAdmissionProperties properties;
+    private TenantAdmissionController tenantAdmissionController;
+
+    @BeforeEach
+    void setUp() {
+        properties = new TenantAdmissionProperties();
+        properties.getDefaults().setRequestsPerMinute(600);
+        properties.getDefaults().setBurst(10);
+        properties.getDefaults().setMaxConcurrent(1);
+        properties.getDefaults().setMaxQueued(2);
+        TenantAdmissionProperties.Limits premium = new TenantAdmissionProperties.Limits();
+        premium.setMaxConcurrent(3);
+        properties.getTiers().put("premium", premium);
+        QueryGuardrailProperties guardrailProperties = new QueryGuardrailProperties();
+        guardrailProperties.setTenantTiers(Map.of(7, "premium"));
+        tenantAdmissionController = new TenantAdmissionController(properties, new QueryGuardrails(guardrailProperties), new SimpleMeterRegistry());
+    }
+
+    @Test
+    void rejectsRequestsOverTheBurstWithRetryAfter() throws KaptureException {
+        properties.getDefaults().setRequestsPerMinute(1);
+        properties.getDefaults().setBurst(2);
+        properties.getDefaults().setMaxConcurrent(10);
+        tenantAdmissionController.acquire(1, () -> false).join().release();
+        tenantAdmissionController.acquire(1, () -> false).join().release();
+
+        KaptureException e = assertThrows(KaptureException.class, () -> tenantAdmissionController.acquire(1, () -> false));
+
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS, e.getBaseResponse().getStatusCode());
+        assertTrue(Long.parseLong(e.getBaseResponse().getHeaders().getFirst(HttpHeaders.RETRY_AFTER)) > 0);
+        assertTrue(tenantAdmissionController.acquire(2, () -> false).isDone());
+    }
+
+    @Test
+    void queuesOverTheConcurrencyCapAndRejectsWhenTheQueueIsFull() throws KaptureException {
+        CompletableFuture<TenantAdmissionController.Permit> first = tenantAdmissionController.acquire(1, () -> false);
+        CompletableFuture<TenantAdmissionController.Permit> second = tenantAdmissionController.acquire(1, () -> false);
+        tenantAdmissionController.acquire(1, () -> false);
+
+        assertTrue(first.isDone());
+        assertFalse(second.isDone());
+        KaptureException e = assertThrows(KaptureException.class, () -> tenantAdmissionController.acquire(1, () -> false));
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS, e.getBaseResponse().getStatusCode());
+
+        first.join().release();
+        assertTrue(second.isDone());
+    }
+
+    @Test
+    void releasedSlotSkipsCancelledWaiters() throws KaptureException {
+        AtomicBoolean cancelled = new AtomicBoolean();
+        CompletableFuture<TenantAdmissionController.Permit> first = tenantAdmissionController.acquire(1, () -> false);
+        CompletableFuture<TenantAdmissionController.Permit> leaving = tenantAdmissionController.acquire(1, cancelled::get);
+        CompletableFuture<TenantAdmissionController.Permit> waiting = tenantAdmissionController.acquire(1, () -> false);
+
+        cancelled.set(true);
+        first.join().release();
+
+        assertTrue(leaving.isCompletedExceptionally());
+        assertTrue(waiting.isDone());
+        assertFalse(waiting.isCompletedExceptionally());
+    }
+
+    @Test
+    void tierRaisesTheConcurrencyCap() throws KaptureException {
+        for (int i = 0; i < 3; i++) {
+            assertTrue(tenantAdmissionController.acquire(7, () -> false).isDone());
+        }
+        assertFalse(tenantAdmissionController.acquire(7, () -> false).isDone());
+    }
+
+    @Test
+    void evictsOnlyIdleTenantsWithAFullBucket() throws KaptureException {
+        properties.setIdleTenantTtlMs(0);
+        properties.getDefaults().setRequestsPerMinute(Integer.MAX_VALUE);
+        tenantAdmissionController.acquire(1, () -> false).join().release();
+        TenantAdmissionController.Permit running = tenantAdmissionController.acquire(2, () -> false).join();
+
+        tenantAdmissionController.evictIdleTenants();
+
+        assertEquals(1, tenantAdmissionController.tenantCount());
+        running.release();
+        tenantAdmissionController.evictIdleTenants();
+        assertEquals(0, tenantAdmissionController.tenantCount());
+        assertTrue(tenantAdmissionController.acquire(1, () -> false).isDone());
+    }
+
+    @Test
+    void disabledControllerAdmitsEverything() throws KaptureException {
+        properties.setEnabled(false);
+
+        assertSame(TenantAdmissionController.Permit.NONE, tenantAdmissionController.acquire(1, () -> false).join());
+    }
+
+}
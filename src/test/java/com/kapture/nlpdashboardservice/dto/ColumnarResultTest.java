@@ -0,0 +1,105 @@
+package com.kapture.nlpdashboardservice.dto;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ColumnarResultTest {
+
+    @Test
+    void keepsUInt64WithinLongRangeAsLongVector() throws SQLException {
+        ResultSet rs = resultSet("UInt64", 2);
+        when(rs.getObject(1)).thenReturn(BigInteger.valueOf(12), Long.valueOf(30));
+
+        ColumnarResult result = ColumnarResult.fromResultSet(rs);
+
+        assertInstanceOf(ColumnarResult.LongVector.class, result.getData().get(0));
+        assertEquals("12", result.toRows().get(0).get("value"));
+        assertEquals("30", result.toRows().get(1).get("value"));
+    }
+
+    @Test
+    void readsUInt64PastLongMaxWithoutWrapping() throws SQLException {
+        ResultSet rs = resultSet("Nullable(UInt64)", 3);
+        when(rs.getObject(1)).thenReturn(new BigInteger("18446744073709551615"), null, BigInteger.ONE);
+
+        ColumnarResult result = ColumnarResult.fromResultSet(rs);
+
+        assertInstanceOf(ColumnarResult.DecimalVector.class, result.getData().get(0));
+        assertEquals("18446744073709551615", result.toRows().get(0).get("value"));
+        assertEquals("null", result.toRows().get(1).get("value"));
+        assertEquals("1", result.toRows().get(2).get("value"));
+        assertEquals(1.8446744073709552E19, result.getData().get(0).getDouble(0));
+    }
+
+    @Test
+    void keepsDecimalPrecisionAndScale() throws SQLException {
+        ResultSet rs = resultSet("Nullable(Decimal(38, 4))", 3);
+        when(rs.getBigDecimal(1)).thenReturn(new BigDecimal("12345678901234567890.1234"), null, new BigDecimal("0.1000"));
+
+        ColumnarResult result = ColumnarResult.fromResultSet(rs);
+
+        assertEquals("12345678901234567890.1234", result.toRows().get(0).get("value"));
+        assertEquals("null", result.toRows().get(1).get("value"));
+        assertEquals("0.1000", result.toRows().get(2).get("value"));
+    }
+
+    @Test
+    void formatsDoublesWithoutExponent() throws SQLException {
+        ResultSet rs = resultSet("Float64", 4);
+        when(rs.getDouble(1)).thenReturn(1.2345678E7, 0.5, 1.0E-5, 12.0);
+
+        ColumnarResult result = ColumnarResult.fromResultSet(rs);
+
+        assertEquals("12345678", result.toRows().get(0).get("value"));
+        assertEquals("0.5", result.toRows().get(1).get("value"));
+        assertEquals("0.00001", result.toRows().get(2).get("value"));
+        assertEquals("12.0", result.toRows().get(3).get("value"));
+    }
+
+    @Test
+    void sliceAndTakeKeepNulls() throws SQLException {
+        ResultSet rs = resultSet("Nullable(Int64)", 4);
+        when(rs.getLong(1)).thenReturn(1L, 0L, 3L, 4L);
+        when(rs.wasNull()).thenReturn(false, true, false, false);
+
+        ColumnarResult result = ColumnarResult.fromResultSet(rs);
+        ColumnarResult slice = result.slice(1, 3);
+        ColumnarResult taken = result.take(new int[]{3, 1});
+
+        assertEquals(2, slice.getRowCount());
+        assertTrue(slice.getData().get(0).isNull(0));
+        assertEquals("3", slice.toRows().get(1).get("value"));
+        assertArrayEquals(new int[]{1}, ((ColumnarResult.LongVector) taken.getData().get(0)).getNulls());
+        assertEquals("4", taken.toRows().get(0).get("value"));
+    }
+
+    private static ResultSet resultSet(String columnType, int rowCount) throws SQLException {
+        ResultSet rs = mock(ResultSet.class);
+        ResultSetMetaData meta = mock(ResultSetMetaData.class);
+        when(rs.getMetaData()).thenReturn(meta);
+        when(meta.getColumnCount()).thenReturn(1);
+        when(meta.getColumnName(anyInt())).thenReturn("value");
+        when(meta.getColumnTypeName(anyInt())).thenReturn(columnType);
+        // true once per row, then false
+        Boolean[] more = new Boolean[rowCount];
+        Arrays.fill(more, Boolean.TRUE);
+        more[rowCount - 1] = Boolean.FALSE;
+        when(rs.next()).thenReturn(true, more);
+        return rs;
+    }
+
+}
@@ -0,0 +1,42 @@
+package com.kapture.nlpdashboardservice.utility;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TableNameIndexTest {
+
+    private final TableNameIndex index = TableNameIndex.build(List.of("tickets", "agents", "ticket_history", "category",
+            "escalations", "customer_feedback", "customer_profile"));
+
+    @Test
+    void matchesExactAndPluralForms() {
+        assertEquals(Set.of("tickets", "agents"), index.match("Show open tickets by agent"));
+        assertEquals(Set.of("category"), index.match("count per categories"));
+    }
+
+    @Test
+    void prefersLongestMultiWordName() {
+        assertEquals(Set.of("ticket_history"), index.match("Ticket history of last week"));
+        assertEquals(Set.of("ticket_history"), index.match("ticket histories"));
+        assertEquals(Set.of("ticket_history"), index.match("rows in ticket_history"));
+    }
+
+    @Test
+    void matchesOnlyUniquePrefixes() {
+        assertEquals(Set.of("escalations"), index.match("escalat rate"));
+        assertTrue(index.match("customer satisfaction").isEmpty());
+        assertTrue(index.match("esc").isEmpty());
+    }
+
+    @Test
+    void emptyIndexMatchesNothing() {
+        assertTrue(TableNameIndex.EMPTY.match("tickets").isEmpty());
+        assertTrue(index.match(null).isEmpty());
+    }
+
+}